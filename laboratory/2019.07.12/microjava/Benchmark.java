@@ -0,0 +1,736 @@
+/*  MicroJava Benchmarks
+ *  ====================
+ *  Place this file in a subdirectory microjava
+ *  Compile with
+ *    javac microjava\*.java
+ *  Run with
+ *    java microjava.Benchmark <benchmarkName> [<inputFileName> ...]
+ */
+package microjava;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+
+import static microjava.TokenType.*;
+
+/**
+ * Class that measures the time taken by parts of the compiler.
+ */
+public class Benchmark {
+	/**
+	 * Number of untimed runs before measuring.
+	 */
+	private static final int WARMUP = 10;
+	/**
+	 * Number of timed runs, from which the fastest one is reported.
+	 */
+	private static final int ROUNDS = 10;
+	/**
+	 * Size of the sources built from the input files, in characters.
+	 */
+	private static final int SOURCE_SIZE = 1 << 20;
+
+	/**
+	 * Sum of the results of all runs, so they are not optimized away.
+	 */
+	private static long sink;
+
+	/**
+	 * Main method of the benchmarks.
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Synopsis: java microjava.Benchmark <benchmarkName> [<inputFileName> ...]");
+			System.out.println("Benchmarks: keywords, relex, pipeline, scan, utf8, parallel, tree, expressions, table, methods, lazy, incremental");
+			return;
+		}
+
+		switch (args[0]) {
+			case "keywords":
+				keywords();
+				break;
+			case "relex":
+				relex(Arrays.copyOfRange(args, 1, args.length));
+				break;
+			case "pipeline":
+				pipeline();
+				break;
+			case "scan":
+				scan();
+				break;
+			case "utf8":
+				utf8();
+				break;
+			case "parallel":
+				parallel();
+				break;
+			case "tree":
+				tree();
+				break;
+			case "expressions":
+				expressions();
+				break;
+			case "table":
+				table();
+				break;
+			case "methods":
+				methods();
+				break;
+			case "lazy":
+				lazy();
+				break;
+			case "incremental":
+				incremental();
+				break;
+			default:
+				System.out.println("Unknown benchmark " + args[0]);
+				return;
+		}
+
+		if (sink == 42) System.out.println();
+	}
+
+	/**
+	 * Compares the keyword recognition of the Scanner with a lookup in a
+	 * table of strings, on keyword heavy and identifier heavy names.
+	 */
+	private static void keywords() {
+		Map<String, TokenType> table = new HashMap<>();
+		table.put("class", CLASS);
+		table.put("else", ELSE);
+		table.put("final", FINAL);
+		table.put("if", IF);
+		table.put("new", NEW);
+		table.put("print", PRINT);
+		table.put("program", PROGRAM);
+		table.put("read", READ);
+		table.put("return", RETURN);
+		table.put("void", VOID);
+		table.put("while", WHILE);
+
+		String[] keywords = table.keySet().toArray(new String[0]);
+		String[] identifiers = { "i", "max", "sieve", "npp", "ready", "x", "found", "put", "val", "Table" };
+
+		for (int percent : new int[] { 90, 10 }) {
+			char[][] names = new char[1 << 16][];
+			Random random = new Random(percent);
+
+			for (int i = 0; i < names.length; i++) {
+				String[] pool = (random.nextInt(100) < percent) ? keywords : identifiers;
+				names[i] = pool[random.nextInt(pool.length)].toCharArray();
+			}
+
+			double map = measure(names.length, () -> {
+				int found = 0;
+				for (char[] name : names) {
+					TokenType type = table.get(new String(name, 0, name.length));
+					if (type != null) found += type.ordinal();
+				}
+				return found;
+			});
+			double scanner = measure(names.length, () -> {
+				int found = 0;
+				for (char[] name : names) {
+					found += Scanner.keyword(name, 0, name.length).ordinal();
+				}
+				return found;
+			});
+
+			System.out.printf("%d%% keywords: HashMap %.2f ns/name, switch %.2f ns/name\n", percent, map, scanner);
+		}
+	}
+
+	/**
+	 * Measures the latency of single character edits on a large source
+	 * with {@link IncrementalScanner}, against scanning the whole source.
+	 *
+	 * @param files the files the source is built from
+	 * @throws IOException if a file cannot be read
+	 */
+	private static void relex(String[] files) throws IOException {
+		char[] source = source(files);
+		double full = measure(1, () -> {
+			TokenBuffer tokens = new TokenBuffer();
+			return new Scanner(source, source.length, new NameTable()).tokenize(tokens);
+		});
+
+		IncrementalScanner scanner = new IncrementalScanner(new String(source));
+		Random random = new Random(source.length);
+		int edits = 20000;
+		long[] latencies = new long[edits];
+		long rescanned = 0;
+
+		// Each insertion is removed by the next edit, so the source stays the same.
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < edits; i += 2) {
+				int offset = random.nextInt(source.length);
+
+				long start = System.nanoTime();
+				rescanned += scanner.edit(offset, 0, "x");
+				long middle = System.nanoTime();
+				rescanned += scanner.edit(offset, 1, "");
+				long end = System.nanoTime();
+
+				latencies[i] = middle - start;
+				latencies[i + 1] = end - middle;
+			}
+		}
+
+		Arrays.sort(latencies);
+		System.out.printf(
+			"%d chars: full scan %.2f ms, edit median %.1f us, 99%% %.1f us, max %.1f us, %.1f tokens scanned per edit\n",
+			source.length,
+			full / 1e6,
+			latencies[edits / 2] / 1e3,
+			latencies[edits * 99 / 100] / 1e3,
+			latencies[edits - 1] / 1e3,
+			(double) rescanned / (edits * 2)
+		);
+	}
+
+	/**
+	 * Compares the throughput of {@link Parser#parse()} when the scanner
+	 * runs in the same thread and when it runs in its own thread.
+	 */
+	private static void pipeline() {
+		char[] source = program(16 * SOURCE_SIZE);
+
+		for (boolean pipelined : new boolean[] { false, true }) {
+			int[] errors = new int[1];
+			double time = measure(1, () -> {
+				Parser parser = new Parser(new Scanner(source, source.length, new NameTable()));
+				parser.setPipelined(pipelined);
+				parser.parse();
+				errors[0] = parser.errors;
+				return parser.errors;
+			});
+
+			System.out.printf(
+				"%s: %.1f MB/s, %d errors\n",
+				pipelined ? "pipelined" : "sequential",
+				source.length / (time / 1e3),
+				errors[0]
+			);
+		}
+	}
+
+	/**
+	 * Measures the throughput of {@link Scanner#tokenize(TokenBuffer)}, over
+	 * the characters of a source and over its UTF-8 bytes with
+	 * {@link Utf8Scanner}. Both skip whitespace and comments a word at a
+	 * time.
+	 */
+	private static void scan() {
+		char[] source = program(16 * SOURCE_SIZE);
+		byte[] bytes = new String(source).getBytes(StandardCharsets.UTF_8);
+		TokenBuffer tokens = new TokenBuffer();
+		double time = measure(1, () -> {
+			tokens.clear();
+			return new Scanner(source, source.length, new NameTable()).tokenize(tokens);
+		});
+		double bytesTime = measure(1, () -> {
+			tokens.clear();
+			return new Utf8Scanner(bytes).tokenize(tokens);
+		});
+
+		System.out.printf(
+			"scanner: %.1f MB/s, utf8 scanner: %.1f MB/s\n",
+			source.length / (time / 1e3),
+			bytes.length / (bytesTime / 1e3)
+		);
+	}
+
+	/**
+	 * Compares the throughput of scanning UTF-8 bytes with
+	 * {@link Utf8Scanner}, against decoding them first, through a
+	 * {@link java.io.Reader} or into a buffer as {@code Scanner(Path)} does.
+	 */
+	private static void utf8() {
+		byte[] source = new String(program(16 * SOURCE_SIZE)).getBytes(StandardCharsets.UTF_8);
+		TokenBuffer tokens = new TokenBuffer();
+
+		double reader = measure(1, () -> {
+			tokens.clear();
+			InputStreamReader input = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8);
+			return new Scanner(input).tokenize(tokens);
+		});
+		double decoded = measure(1, () -> {
+			tokens.clear();
+			char[] chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(source)).array();
+			return new Scanner(chars, source.length, new NameTable()).tokenize(tokens);
+		});
+		double bytes = measure(1, () -> {
+			tokens.clear();
+			return new Utf8Scanner(source).tokenize(tokens);
+		});
+
+		System.out.printf(
+			"reader: %.1f MB/s, decoded: %.1f MB/s, bytes: %.1f MB/s\n",
+			source.length / (reader / 1e3),
+			source.length / (decoded / 1e3),
+			source.length / (bytes / 1e3)
+		);
+	}
+
+	/**
+	 * Measures the speedup of {@link ParallelScanner#tokenize(TokenBuffer)}
+	 * over {@link Scanner#tokenize(TokenBuffer)}, for each number of threads
+	 * up to the number of processors.
+	 */
+	private static void parallel() {
+		char[] source = program(16 * SOURCE_SIZE);
+		TokenBuffer tokens = new TokenBuffer();
+		double sequential = measure(1, () -> {
+			tokens.clear();
+			return new Scanner(source, source.length, new NameTable()).tokenize(tokens);
+		});
+
+		System.out.printf("sequential: %.1f MB/s\n", source.length / (sequential / 1e3));
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		// Powers of two, then the number of processors.
+		for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			int chunkSize = source.length / (4 * threads);
+			double time = measure(1, () -> {
+				tokens.clear();
+				return new ParallelScanner(source, source.length, pool, chunkSize).tokenize(tokens);
+			});
+			pool.shutdown();
+
+			System.out.printf(
+				"%d threads: %.1f MB/s, speedup %.2f\n",
+				threads,
+				source.length / (time / 1e3),
+				sequential / time
+			);
+
+			if (threads == processors) break;
+		}
+	}
+
+	/**
+	 * Compares the memory taken by the {@link SyntaxTree} of a large
+	 * program with a tree of one object per node, measured on the heap.
+	 */
+	private static void tree() {
+		char[] source = program(4 * SOURCE_SIZE);
+		Parser parser = new Parser(new Scanner(source, source.length, new NameTable()));
+		parser.parse();
+
+		SyntaxTree tree = parser.tree();
+		int nodes = tree.size();
+		long before = usedMemory();
+		ObjectNode root = ObjectNode.copy(tree);
+		long objects = usedMemory() - before;
+		sink += root.children.size();
+
+		System.out.printf(
+			"%d nodes: arena %.1f bytes/node (%.1f with the unused capacity), objects %.1f bytes/node\n",
+			nodes,
+			(1.0 + 3 * Integer.BYTES),
+			(double) tree.memory() / nodes,
+			(double) objects / nodes
+		);
+	}
+
+	/**
+	 * Compares the throughput of {@link TableParser#parse()} with the one of
+	 * {@link Parser#parse()}, scanning included. The recursive descent
+	 * parser also builds the syntax tree.
+	 */
+	private static void table() {
+		char[] source = program(16 * SOURCE_SIZE);
+		TokenBuffer tokens = new TokenBuffer();
+
+		double recursive = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.parse();
+			return parser.errors;
+		});
+		double table = measure(1, () -> {
+			TableParser parser = new TableParser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.parse();
+			return parser.errors;
+		});
+
+		System.out.printf(
+			"recursive descent: %.1f MB/s, LL(1) table: %.1f MB/s, %.1f ns/token\n",
+			source.length / (recursive / 1e3),
+			source.length / (table / 1e3),
+			table / tokens.size()
+		);
+	}
+
+	/**
+	 * Measures the speedup of {@link Parser#parse()} with the method
+	 * declarations parsed in parallel over parsing them in order, for each
+	 * number of threads up to the number of processors. Scanning is
+	 * included, and done in order by both, so the speedup is that of the
+	 * parser alone: a {@link ParallelScanner} would also scale it.
+	 */
+	private static void methods() {
+		char[] source = program(16 * SOURCE_SIZE);
+		TokenBuffer tokens = new TokenBuffer();
+		double sequential = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.parse();
+			return parser.tree().size();
+		});
+
+		System.out.printf("sequential: %.1f MB/s\n", source.length / (sequential / 1e3));
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		// Powers of two, then the number of processors.
+		for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			double time = measure(1, () -> {
+				Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+				parser.setParallel(pool, Parser.DEFAULT_BATCH_SIZE);
+				parser.parse();
+				return parser.tree().size();
+			});
+			pool.shutdown();
+
+			System.out.printf(
+				"%d threads: %.1f MB/s, speedup %.2f\n",
+				threads,
+				source.length / (time / 1e3),
+				sequential / time
+			);
+
+			if (threads == processors) break;
+		}
+	}
+
+	/**
+	 * Compares {@link Parser#parse()} with the bodies of the methods
+	 * skipped to a full parse, scanning included, and to parsing all the
+	 * skipped bodies afterwards.
+	 */
+	private static void lazy() {
+		char[] source = program(16 * SOURCE_SIZE);
+		TokenBuffer tokens = new TokenBuffer();
+
+		double full = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.parse();
+			return parser.tree().size();
+		});
+		double outline = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.setLazy(true);
+			parser.parse();
+			return parser.tree().size();
+		});
+		double bodies = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.setLazy(true);
+			parser.parse();
+
+			SyntaxTree tree = parser.tree();
+			for (int node = tree.firstChild(tree.root()); node != SyntaxTree.NONE; node = tree.nextSibling(node)) {
+				if (tree.kind(node) == NodeKind.METHOD_DECL) {
+					parser.parseBody(node);
+				}
+			}
+
+			return tree.size();
+		});
+
+		System.out.printf(
+			"full: %.1f MB/s, declarations only: %.1f MB/s, speedup %.2f, then every body: %.1f MB/s\n",
+			source.length / (full / 1e3),
+			source.length / (outline / 1e3),
+			full / outline,
+			source.length / (bodies / 1e3)
+		);
+	}
+
+	/**
+	 * Measures the latency of inserting and removing a statement in a
+	 * large program with {@link IncrementalParser}, against parsing the
+	 * whole program, scanning included.
+	 */
+	private static void incremental() {
+		char[] source = program(4 * SOURCE_SIZE);
+		String text = new String(source);
+		TokenBuffer tokens = new TokenBuffer();
+		double full = measure(1, () -> {
+			Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+			parser.parse();
+			return parser.tree().size();
+		});
+
+		IncrementalParser parser = new IncrementalParser(text);
+		Random random = new Random(source.length);
+		String statement = "npp = npp + 1;\n    ";
+		int edits = 2000;
+		long[] latencies = new long[edits];
+		long parsed = 0;
+
+		// Each insertion is removed by the next edit, so the source stays the same.
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < edits; i += 2) {
+				// Before the return statement of a random method.
+				int offset = text.indexOf("return;", random.nextInt(text.length() / 2));
+
+				long start = System.nanoTime();
+				parsed += parser.edit(offset, 0, statement);
+				long middle = System.nanoTime();
+				parsed += parser.edit(offset, statement.length(), "");
+				long end = System.nanoTime();
+
+				latencies[i] = middle - start;
+				latencies[i + 1] = end - middle;
+			}
+		}
+
+		Arrays.sort(latencies);
+		System.out.printf(
+			"%d chars: full parse %.2f ms, edit median %.1f us, 99%% %.1f us, max %.1f us, %.1f tokens parsed per edit\n",
+			source.length,
+			full / 1e6,
+			latencies[edits / 2] / 1e3,
+			latencies[edits * 99 / 100] / 1e3,
+			latencies[edits - 1] / 1e3,
+			(double) parsed / (edits * 2)
+		);
+	}
+
+	/**
+	 * Measures {@link Parser#parse()} on a long chain of operators and on
+	 * deeply nested expressions, of growing sizes, to show that the time
+	 * per token stays the same.
+	 */
+	private static void expressions() {
+		TokenBuffer tokens = new TokenBuffer();
+
+		for (String shape : new String[] { "chain", "nested" }) {
+			for (int size = 1 << 12; size <= 1 << 18; size <<= 2) {
+				char[] source = expression(shape, size);
+				int[] errors = new int[1];
+				double time = measure(1, () -> {
+					Parser parser = new Parser(new Scanner(source, source.length, new NameTable()), tokens);
+					parser.parse();
+					errors[0] = parser.errors;
+					return parser.tree().size();
+				});
+
+				System.out.printf(
+					"%s %d: %d tokens, %.1f ns/token, %d errors\n",
+					shape,
+					size,
+					tokens.size(),
+					time / tokens.size(),
+					errors[0]
+				);
+			}
+		}
+	}
+
+	/**
+	 * Generates a program with a single expression.
+	 *
+	 * @param shape "chain" for operators one after the other, or "nested"
+	 *        for calls, indices and parentheses inside each other
+	 * @param size the number of operators or of nesting levels
+	 * @return the program
+	 */
+	private static char[] expression(String shape, int size) {
+		StringBuilder program = new StringBuilder("program P {\n  void main() {\n    x = ");
+
+		if (shape.equals("chain")) {
+			program.append("-a");
+			for (int i = 0; i < size; i++) {
+				program.append((i % 3 == 0) ? " * " : (i % 3 == 1) ? " + " : " % ").append("b[").append(i).append(']');
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				program.append("f(a, v.w[(-");
+			}
+			program.append('1');
+			for (int i = 0; i < size; i++) {
+				program.append(")])");
+			}
+		}
+
+		return program.append(";\n  }\n}\n").toString().toCharArray();
+	}
+
+	/**
+	 * Generates a valid program with many methods.
+	 *
+	 * @param size the minimum number of characters of the program
+	 * @return the program
+	 */
+	private static char[] program(int size) {
+		StringBuilder program = new StringBuilder(size + 1024);
+		program.append("program Generated\n")
+			.append("  final int size = 10;\n")
+			.append("  final char mark = 'x';\n")
+			.append("  class Table {\n")
+			.append("    int[] pos;\n")
+			.append("    int[] neg;\n")
+			.append("  }\n")
+			.append("  Table val;\n")
+			.append("  char[] sieve;\n")
+			.append("  int npp;\n")
+			.append("{\n");
+
+		for (int i = 0; program.length() < size; i++) {
+			program.append("  void method").append(i).append("(int x)\n")
+				.append("    int i, ready;\n")
+				.append("  {\n")
+				.append("    // Counts up to x.\n")
+				.append("    i = 0;\n")
+				.append("    while (i <= x) {\n")
+				.append("      if (i % 2 == 0) npp = npp + 1;\n")
+				.append("      else sieve[i] = mark;\n")
+				.append("      i = i + 1;\n")
+				.append("    }\n")
+				.append("    val = new Table;\n")
+				.append("    val.pos = new int[size];\n")
+				.append("    read(ready);\n")
+				.append("    print(ready * ").append(i).append(", 5);\n")
+				.append("    method").append(i).append("(i);\n")
+				.append("    return;\n")
+				.append("  }\n");
+		}
+
+		program.append("  void main() {\n")
+			.append("    method0(1);\n")
+			.append("  }\n")
+			.append("}\n");
+
+		return program.toString().toCharArray();
+	}
+
+	/**
+	 * Builds a large source by repeating the contents of some files.
+	 *
+	 * @param files the files
+	 * @return the source, with at least {@code SOURCE_SIZE} characters
+	 * @throws IOException if a file cannot be read
+	 */
+	private static char[] source(String[] files) throws IOException {
+		if (files.length == 0) {
+			throw new IllegalArgumentException("No input files given");
+		}
+
+		StringBuilder contents = new StringBuilder();
+		for (String file : files) {
+			contents.append(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+			contents.append('\n');
+		}
+
+		StringBuilder source = new StringBuilder(SOURCE_SIZE + contents.length());
+		while (source.length() < SOURCE_SIZE) {
+			source.append(contents);
+		}
+
+		return source.toString().toCharArray();
+	}
+
+	/**
+	 * @return the number of bytes used on the heap, after collecting the
+	 *         garbage
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Runs a task several times and measures the fastest run.
+	 *
+	 * @param operations the number of operations done by one run
+	 * @param task the task, which returns a result to be kept
+	 * @return the time of the fastest run in nanoseconds per operation
+	 */
+	private static double measure(long operations, IntSupplier task) {
+		for (int i = 0; i < WARMUP; i++) {
+			sink += task.getAsInt();
+		}
+
+		long best = Long.MAX_VALUE;
+
+		for (int i = 0; i < ROUNDS; i++) {
+			long start = System.nanoTime();
+			sink += task.getAsInt();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		return (double) best / operations;
+	}
+
+	/**
+	 * Node of a syntax tree with one object per node, as it would be
+	 * without an arena.
+	 */
+	private static class ObjectNode {
+		/**
+		 * Kind of the node.
+		 */
+		final NodeKind kind;
+		/**
+		 * Index of the token of the node.
+		 */
+		final int token;
+		/**
+		 * Children of the node.
+		 */
+		final List<ObjectNode> children = new ArrayList<>();
+
+		ObjectNode(NodeKind kind, int token) {
+			this.kind = kind;
+			this.token = token;
+		}
+
+		/**
+		 * Copies a syntax tree into objects.
+		 *
+		 * @param tree the tree
+		 * @return the root of the copy
+		 */
+		static ObjectNode copy(SyntaxTree tree) {
+			SyntaxTree.Cursor cursor = tree.cursor();
+			ObjectNode[] path = new ObjectNode[16];
+			ObjectNode node = new ObjectNode(cursor.kind(), cursor.token());
+			ObjectNode root = node;
+
+			while (true) {
+				if (cursor.firstChild()) {
+					if (cursor.depth() > path.length) {
+						path = Arrays.copyOf(path, path.length * 2);
+					}
+					path[cursor.depth() - 1] = node;
+				} else {
+					while (!cursor.nextSibling()) {
+						if (!cursor.parent()) return root;
+					}
+				}
+
+				node = new ObjectNode(cursor.kind(), cursor.token());
+				path[cursor.depth() - 1].children.add(node);
+			}
+		}
+	}
+}
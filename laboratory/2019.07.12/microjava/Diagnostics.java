@@ -0,0 +1,336 @@
+package microjava;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects the errors found in a source.
+ *
+ * Each error is kept as a code, a position and up to two integer arguments,
+ * and its message is only formatted when the report is rendered. All the
+ * errors are kept unless a maximum is set, after which they are only
+ * counted.
+ */
+public class Diagnostics {
+	/**
+	 * Default maximum number of errors kept, which keeps all of them.
+	 */
+	public static final int DEFAULT_MAX_ERRORS = Integer.MAX_VALUE;
+
+	/**
+	 * Token types, indexed by ordinal.
+	 */
+	private static final TokenType[] TYPES = TokenType.values();
+
+	/**
+	 * Kinds of arguments of an error.
+	 */
+	private enum Arguments {
+		/**
+		 * No arguments.
+		 */
+		NONE,
+		/**
+		 * A part of the source, as a position and a length.
+		 */
+		TEXT,
+		/**
+		 * Token types, as ordinals.
+		 */
+		TOKENS
+	}
+
+	/**
+	 * Possible errors and their messages.
+	 */
+	public enum Code {
+		EMPTY_CHARACTER(true, "Empty character", Arguments.NONE),
+		UNTERMINATED_CHARACTER(true, "Unterminated char", Arguments.NONE),
+		INVALID_CHARACTER(true, "Invalid character '%s'", Arguments.TEXT),
+		INVALID_NUMBER(true, "Invalid number %s", Arguments.TEXT),
+
+		EXPECTED(false, "%s expected, found %s", Arguments.TOKENS),
+		CONSTANT_EXPECTED(false, "Expected number or char constant", Arguments.NONE),
+		INVALID_STATEMENT_START(false, "Invalid start of statement", Arguments.NONE),
+		ILLEGAL_STATEMENT_START(false, "Illegal start of statement: %s", Arguments.TOKENS),
+		INVALID_ASSIGNMENT_OR_CALL(false, "Invalid assignment or call", Arguments.NONE),
+		RELATIONAL_OPERATOR_EXPECTED(false, "Relational operator expected", Arguments.NONE),
+		INVALID_EXPRESSION(false, "Invalid expression", Arguments.NONE),
+		INVALID_FACTOR(false, "Invalid factor", Arguments.NONE),
+		UNEXPECTED_TOKEN(false, "Unexpected %s", Arguments.TOKENS),
+		NESTING_TOO_DEEP(false, "Statements nested too deeply", Arguments.NONE),
+		END_OF_PROGRAM(false, "end of file found before end of program", Arguments.NONE);
+
+		/**
+		 * If the error is found by the scanner.
+		 */
+		private final boolean lexical;
+		/**
+		 * Message format.
+		 */
+		private final String message;
+		/**
+		 * Kind of the arguments of the message.
+		 */
+		private final Arguments arguments;
+
+		Code(boolean lexical, String message, Arguments arguments) {
+			this.lexical = lexical;
+			this.message = message;
+			this.arguments = arguments;
+		}
+	}
+
+	/**
+	 * Codes of the errors kept.
+	 */
+	private final Code[] codes = Code.values();
+
+	/**
+	 * Lines of the source where the errors were found, which give the line
+	 * and column of each error when the report is rendered.
+	 */
+	private final LineIndex lines;
+	/**
+	 * Maximum number of errors kept.
+	 */
+	private int maxErrors = DEFAULT_MAX_ERRORS;
+	/**
+	 * Number of errors reported, including the ones not kept.
+	 */
+	private int count;
+	/**
+	 * Number of errors kept.
+	 */
+	private int size;
+	/**
+	 * Code ordinal of each error.
+	 */
+	private byte[] errorCodes = new byte[16];
+	/**
+	 * Position of each error from start of source file.
+	 */
+	private int[] offsets = new int[16];
+	/**
+	 * First argument of each error.
+	 */
+	private int[] firstArguments = new int[16];
+	/**
+	 * Second argument of each error.
+	 */
+	private int[] secondArguments = new int[16];
+
+	/**
+	 * Creates an empty collector.
+	 *
+	 * @param lines the lines of the source where the errors are found
+	 */
+	public Diagnostics(LineIndex lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * Sets the maximum number of errors kept. The following errors are
+	 * only counted, and none of their data is stored.
+	 *
+	 * @param maxErrors the maximum number of errors
+	 */
+	public synchronized void setMaxErrors(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * @return the number of errors reported, including the ones not kept
+	 */
+	public synchronized int count() {
+		return count;
+	}
+
+	/**
+	 * Reports an error without arguments.
+	 *
+	 * @param code the error
+	 * @param offset the position of the error, after the token found
+	 */
+	public void report(Code code, int offset) {
+		report(code, offset, 0, 0);
+	}
+
+	/**
+	 * Reports an error. The arguments are a position and a length in the
+	 * source, or the ordinals of token types, depending on the code.
+	 *
+	 * @param code the error
+	 * @param offset the position of the error, after the token found
+	 * @param first the first argument
+	 * @param second the second argument
+	 */
+	public synchronized void report(Code code, int offset, int first, int second) {
+		if (count++ >= maxErrors) {
+			return;
+		}
+
+		if (size == offsets.length) {
+			int capacity = size * 2;
+			errorCodes = Arrays.copyOf(errorCodes, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			firstArguments = Arrays.copyOf(firstArguments, capacity);
+			secondArguments = Arrays.copyOf(secondArguments, capacity);
+		}
+
+		errorCodes[size] = (byte) code.ordinal();
+		offsets[size] = offset;
+		firstArguments[size] = first;
+		secondArguments[size] = second;
+		size++;
+	}
+
+	/**
+	 * Reports again the errors kept by another collector after a position,
+	 * such as the errors found by a scanner for a part of the source.
+	 *
+	 * @param other the other collector
+	 * @param from the position before the errors copied
+	 */
+	void addAll(Diagnostics other, int from) {
+		for (int i = 0; i < other.size; i++) {
+			if (other.offsets[i] > from) {
+				add(other, i);
+			}
+		}
+	}
+
+	/**
+	 * Reports again the errors kept by two other collectors, in the order
+	 * of their positions, such as the errors found in parts of the source
+	 * parsed apart. The errors of each collector must be in that order.
+	 *
+	 * @param first the first collector
+	 * @param second the second collector
+	 */
+	void addMerged(Diagnostics first, Diagnostics second) {
+		int i = 0;
+		int j = 0;
+
+		while (i < first.size || j < second.size) {
+			if (j == second.size || (i < first.size && first.offsets[i] <= second.offsets[j])) {
+				add(first, i++);
+			} else {
+				add(second, j++);
+			}
+		}
+	}
+
+	/**
+	 * Reports again all the errors kept by another collector, in the
+	 * order they were reported there.
+	 *
+	 * @param other the other collector
+	 */
+	void addAll(Diagnostics other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other, i);
+		}
+	}
+
+	/**
+	 * Removes an error kept, as if it was not reported.
+	 *
+	 * @param i the index of the error, in the order of the reports
+	 */
+	synchronized void remove(int i) {
+		int moved = size - i - 1;
+		System.arraycopy(errorCodes, i + 1, errorCodes, i, moved);
+		System.arraycopy(offsets, i + 1, offsets, i, moved);
+		System.arraycopy(firstArguments, i + 1, firstArguments, i, moved);
+		System.arraycopy(secondArguments, i + 1, secondArguments, i, moved);
+		size--;
+		count--;
+	}
+
+	/**
+	 * Reports again an error kept by another collector.
+	 *
+	 * @param other the other collector
+	 * @param i the index of the error in the other collector
+	 */
+	private void add(Diagnostics other, int i) {
+		report(codes[other.errorCodes[i]], other.offsets[i], other.firstArguments[i], other.secondArguments[i]);
+	}
+
+	/**
+	 * Renders the errors kept, in the order of their positions, one per line.
+	 *
+	 * @param out where the report is written
+	 * @throws IOException if the report cannot be written
+	 */
+	public synchronized void render(Appendable out) throws IOException {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(offsets[a], offsets[b]));
+
+		for (int i : order) {
+			out.append(message(i)).append('\n');
+		}
+
+		if (count > size) {
+			out.append(String.format("%d more errors not shown\n", count - size));
+		}
+	}
+
+	/**
+	 * Prints the errors kept, in the order of their positions.
+	 *
+	 * @param out the stream where the report is printed
+	 */
+	public void print(PrintStream out) {
+		StringBuilder report = new StringBuilder();
+
+		try {
+			render(report);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		out.print(report);
+		out.flush();
+	}
+
+	/**
+	 * Formats the message of an error.
+	 *
+	 * @param i the index of the error
+	 * @return the message
+	 */
+	private String message(int i) {
+		Code code = codes[errorCodes[i]];
+		Object[] arguments;
+
+		switch (code.arguments) {
+			case TEXT:
+				arguments = new Object[] { CharBuffer.wrap(lines.source(), firstArguments[i], secondArguments[i]) };
+				break;
+			case TOKENS:
+				arguments = new Object[] { TYPES[firstArguments[i]], TYPES[secondArguments[i]] };
+				break;
+			default:
+				arguments = new Object[0];
+		}
+
+		String message = String.format(code.message, arguments);
+
+		int line = lines.line(offsets[i]);
+		int column = lines.column(offsets[i]);
+
+		if (code.lexical) {
+			return String.format("ERROR (%d, %d): %s", line, column, message);
+		} else {
+			return String.format("Line %d col %d: %s", line, column, message);
+		}
+	}
+}
@@ -0,0 +1,565 @@
+package microjava;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static microjava.TokenType.*;
+
+/**
+ * Grammar in EBNF, with the FIRST and FOLLOW sets of its nonterminals.
+ *
+ * The rules are written as in the Javadoc of the parse methods of the
+ * {@link Parser}: names starting with an upper case letter are
+ * nonterminals, {@code ident}, {@code number} and {@code charConst} are
+ * the class tokens, quoted text is the token with that spelling, and
+ * {@code |}, {@code ( )}, {@code [ ]} and <code>{ }</code> are alternatives,
+ * groups, options and repetitions. The first rule is the start symbol.
+ *
+ * Sets of tokens are {@code long} bitmasks with the bit of each token at
+ * its ordinal, so testing if a token is in a set is a shift and a mask.
+ */
+public class Grammar {
+	/**
+	 * Token types, indexed by ordinal.
+	 */
+	private static final TokenType[] TYPES = TokenType.values();
+
+	static {
+		if (TYPES.length > Long.SIZE) {
+			throw new AssertionError("Too many token types for a long set");
+		}
+	}
+
+	/**
+	 * Grammar of MicroJava.
+	 */
+	public static final Grammar MICROJAVA = new Grammar(
+		"Program = \"program\" ident {ConstDecl | ClassDecl | VarDecl} '{' {MethodDecl} '}'",
+		"ConstDecl = \"final\" Type ident \"=\" (number | charConst) \";\"",
+		"ClassDecl = \"class\" ident \"{\" {VarDecl} \"}\"",
+		"VarDecl = Type ident {\",\" ident} \";\"",
+		"MethodDecl = (Type | \"void\") ident \"(\" [FormPars] \")\" {VarDecl} Block",
+		"Type = ident [\"[\" \"]\"]",
+		"FormPars = Type ident {\",\" Type ident}",
+		"Block = '{' {Statement} '}'",
+		"Statement = SimpleStatement | IfStatement | WhileStatement | ReturnStatement"
+			+ " | ReadStatement | PrintStatement | Block | \";\"",
+		"SimpleStatement = Designator (\"=\" Expr | ActPars) \";\"",
+		"IfStatement = \"if\" \"(\" Condition \")\" Statement [\"else\" Statement]",
+		"WhileStatement = \"while\" \"(\" Condition \")\" Statement",
+		"ReturnStatement = \"return\" [Expr] \";\"",
+		"ReadStatement = \"read\" \"(\" Designator \")\" \";\"",
+		"PrintStatement = \"print\" \"(\" Expr [\",\" number] \")\" \";\"",
+		"Condition = Expr Relop Expr",
+		"Expr = [\"-\"] Term {Addop Term}",
+		"Term = Factor {Mulop Factor}",
+		"Factor = Designator [ActPars] | number | charConst | \"new\" ident [\"[\" Expr \"]\"] | \"(\" Expr \")\"",
+		"Designator = ident {\".\" ident | \"[\" Expr \"]\"}",
+		"ActPars = \"(\" [Expr {\",\" Expr}] \")\"",
+		"Relop = \"==\" | \"!=\" | \">\" | \">=\" | \"<\" | \"<=\"",
+		"Addop = \"+\" | \"-\"",
+		"Mulop = \"*\" | \"/\" | \"%\""
+	);
+
+	/**
+	 * Kinds of the parts of a rule.
+	 */
+	enum Kind {
+		/**
+		 * A token, whose symbol is the ordinal of its type.
+		 */
+		TERMINAL,
+		/**
+		 * A nonterminal, whose symbol is the index of its rule.
+		 */
+		NONTERMINAL,
+		/**
+		 * Children one after the other.
+		 */
+		SEQUENCE,
+		/**
+		 * One of the children.
+		 */
+		ALTERNATIVE,
+		/**
+		 * The only child, or nothing.
+		 */
+		OPTION,
+		/**
+		 * The only child, any number of times.
+		 */
+		REPETITION
+	}
+
+	/**
+	 * Part of the right side of a rule.
+	 */
+	static final class Node {
+		/**
+		 * Kind of the part.
+		 */
+		final Kind kind;
+		/**
+		 * Token ordinal or rule index, for a terminal or a nonterminal.
+		 */
+		final int symbol;
+		/**
+		 * Parts inside this one.
+		 */
+		final Node[] children;
+
+		Node(Kind kind, int symbol, Node... children) {
+			this.kind = kind;
+			this.symbol = symbol;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * Names of the nonterminals, in the order of their rules.
+	 */
+	private final String[] names;
+	/**
+	 * Index of the rule of each nonterminal, by name.
+	 */
+	private final Map<String, Integer> indices = new HashMap<>();
+	/**
+	 * Right side of each rule.
+	 */
+	private final Node[] rules;
+	/**
+	 * If each nonterminal can derive nothing.
+	 */
+	private final boolean[] nullable;
+	/**
+	 * Tokens that can start each nonterminal.
+	 */
+	private final long[] first;
+	/**
+	 * Tokens that can follow each nonterminal.
+	 */
+	private final long[] follow;
+
+	/**
+	 * Creates a grammar from its rules, and computes its sets.
+	 *
+	 * @param rules the rules, as {@code Name = expression}
+	 * @throws IllegalArgumentException if a rule is malformed, or uses a
+	 *         token or nonterminal that does not exist
+	 */
+	public Grammar(String... rules) {
+		int count = rules.length;
+		names = new String[count];
+		this.rules = new Node[count];
+		nullable = new boolean[count];
+		first = new long[count];
+		follow = new long[count];
+
+		// The names come first, so a rule can use the ones defined after it.
+		for (int i = 0; i < count; i++) {
+			int equals = rules[i].indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Rule without '=': " + rules[i]);
+			}
+
+			names[i] = rules[i].substring(0, equals).trim();
+			if (indices.put(names[i], i) != null) {
+				throw new IllegalArgumentException("Nonterminal defined twice: " + names[i]);
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			this.rules[i] = new RuleReader(rules[i], rules[i].indexOf('=') + 1).read();
+		}
+
+		computeFirst();
+		computeFollow();
+	}
+
+	/**
+	 * @return the number of nonterminals
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * @param nonterminal the index of a rule
+	 * @return the name of its nonterminal
+	 */
+	String name(int nonterminal) {
+		return names[nonterminal];
+	}
+
+	/**
+	 * @param nonterminal the index of a rule
+	 * @return the right side of the rule
+	 */
+	Node rule(int nonterminal) {
+		return rules[nonterminal];
+	}
+
+	/**
+	 * @param name the name of a nonterminal
+	 * @return the index of its rule
+	 * @throws IllegalArgumentException if there's no such nonterminal
+	 */
+	int index(String name) {
+		Integer index = indices.get(name);
+		if (index == null) {
+			throw new IllegalArgumentException("Unknown nonterminal: " + name);
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param nonterminal the name of a nonterminal
+	 * @return {@code true} if the nonterminal can derive nothing
+	 */
+	public boolean nullable(String nonterminal) {
+		return nullable[index(nonterminal)];
+	}
+
+	/**
+	 * @param nonterminal the name of a nonterminal
+	 * @return the set of the tokens that can start the nonterminal
+	 */
+	public long first(String nonterminal) {
+		return first[index(nonterminal)];
+	}
+
+	/**
+	 * @param nonterminal the name of a nonterminal
+	 * @return the set of the tokens that can follow the nonterminal, with
+	 *         EOF after the start symbol
+	 */
+	public long follow(String nonterminal) {
+		return follow[index(nonterminal)];
+	}
+
+	/**
+	 * @param types token types
+	 * @return the set of the token types
+	 */
+	static long setOf(TokenType... types) {
+		long set = 0;
+		for (TokenType type : types) {
+			set |= 1L << type.ordinal();
+		}
+
+		return set;
+	}
+
+	/**
+	 * @param set a set of token types
+	 * @param type a token type
+	 * @return {@code true} if the type is in the set
+	 */
+	static boolean contains(long set, TokenType type) {
+		return (set & (1L << type.ordinal())) != 0;
+	}
+
+	/**
+	 * @param set a set of token types
+	 * @return the types in the set, in the order of their ordinals
+	 */
+	static String toString(long set) {
+		StringBuilder text = new StringBuilder("{");
+
+		for (TokenType type : TYPES) {
+			if (contains(set, type)) {
+				text.append((text.length() > 1) ? ", " : "").append(type);
+			}
+		}
+
+		return text.append('}').toString();
+	}
+
+	/**
+	 * @param node a part of a rule
+	 * @return {@code true} if the part can derive nothing
+	 */
+	boolean nullable(Node node) {
+		switch (node.kind) {
+			case TERMINAL:
+				return false;
+			case NONTERMINAL:
+				return nullable[node.symbol];
+			case SEQUENCE:
+				for (Node child : node.children) {
+					if (!nullable(child)) return false;
+				}
+				return true;
+			case ALTERNATIVE:
+				for (Node child : node.children) {
+					if (nullable(child)) return true;
+				}
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @param node a part of a rule
+	 * @return the set of the tokens that can start the part
+	 */
+	long first(Node node) {
+		switch (node.kind) {
+			case TERMINAL:
+				return 1L << node.symbol;
+			case NONTERMINAL:
+				return first[node.symbol];
+			case SEQUENCE:
+				long set = 0;
+				for (Node child : node.children) {
+					set |= first(child);
+					if (!nullable(child)) break;
+				}
+				return set;
+			default:
+				long union = 0;
+				for (Node child : node.children) {
+					union |= first(child);
+				}
+				return union;
+		}
+	}
+
+	/**
+	 * Computes the nullable nonterminals and their FIRST sets, until none
+	 * changes.
+	 */
+	private void computeFirst() {
+		boolean changed = true;
+
+		while (changed) {
+			changed = false;
+
+			for (int i = 0; i < rules.length; i++) {
+				boolean empty = nullable(rules[i]);
+				long set = first(rules[i]);
+
+				if (empty != nullable[i] || set != first[i]) {
+					nullable[i] = empty;
+					first[i] = set;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the FOLLOW sets of the nonterminals, until none changes.
+	 */
+	private void computeFollow() {
+		follow[0] = setOf(EOF);
+		boolean changed = true;
+
+		while (changed) {
+			changed = false;
+
+			for (int i = 0; i < rules.length; i++) {
+				changed |= addFollow(rules[i], follow[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds to the FOLLOW sets of the nonterminals in a part of a rule the
+	 * tokens that can follow them.
+	 *
+	 * @param node the part of the rule
+	 * @param after the set of the tokens that can follow the part
+	 * @return {@code true} if a set changed
+	 */
+	private boolean addFollow(Node node, long after) {
+		boolean changed = false;
+
+		switch (node.kind) {
+			case NONTERMINAL:
+				long old = follow[node.symbol];
+				follow[node.symbol] |= after;
+				return follow[node.symbol] != old;
+			case SEQUENCE:
+				for (int i = node.children.length - 1; i >= 0; i--) {
+					Node child = node.children[i];
+					changed |= addFollow(child, after);
+					after = nullable(child) ? (first(child) | after) : first(child);
+				}
+				return changed;
+			case ALTERNATIVE:
+			case OPTION:
+				for (Node child : node.children) {
+					changed |= addFollow(child, after);
+				}
+				return changed;
+			case REPETITION:
+				return addFollow(node.children[0], first(node.children[0]) | after);
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Reads the right side of a rule.
+	 */
+	private class RuleReader {
+		/**
+		 * Text of the rule.
+		 */
+		private final String text;
+		/**
+		 * Position of the next character to read.
+		 */
+		private int pos;
+
+		/**
+		 * @param text the text of the rule
+		 * @param pos the position of the right side
+		 */
+		RuleReader(String text, int pos) {
+			this.text = text;
+			this.pos = pos;
+		}
+
+		/**
+		 * @return the right side of the rule
+		 */
+		Node read() {
+			Node node = alternatives();
+			if (peek() != 0) {
+				throw malformed();
+			}
+
+			return node;
+		}
+
+		/**
+		 * @return alternatives, or a single sequence
+		 */
+		private Node alternatives() {
+			List<Node> children = new ArrayList<>();
+			children.add(sequence());
+
+			while (peek() == '|') {
+				pos++;
+				children.add(sequence());
+			}
+
+			return (children.size() == 1) ? children.get(0)
+				: new Node(Kind.ALTERNATIVE, -1, children.toArray(new Node[0]));
+		}
+
+		/**
+		 * @return a sequence, or a single item
+		 */
+		private Node sequence() {
+			List<Node> children = new ArrayList<>();
+
+			for (char c = peek(); c != 0 && c != '|' && c != ')' && c != ']' && c != '}'; c = peek()) {
+				children.add(item());
+			}
+
+			return (children.size() == 1) ? children.get(0)
+				: new Node(Kind.SEQUENCE, -1, children.toArray(new Node[0]));
+		}
+
+		/**
+		 * @return a token, a nonterminal or a bracketed part
+		 */
+		private Node item() {
+			char c = peek();
+			pos++;
+
+			switch (c) {
+				case '(':
+					return close(alternatives(), ')');
+				case '[':
+					return new Node(Kind.OPTION, -1, close(alternatives(), ']'));
+				case '{':
+					return new Node(Kind.REPETITION, -1, close(alternatives(), '}'));
+				case '"':
+				case '\'':
+					int end = text.indexOf(c, pos);
+					if (end < 0) throw malformed();
+					String lexeme = text.substring(pos, end);
+					pos = end + 1;
+					return terminal(lexeme);
+				default:
+					if (!Character.isLetter(c)) throw malformed();
+					int start = pos - 1;
+					while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+						pos++;
+					}
+					return name(text.substring(start, pos));
+			}
+		}
+
+		/**
+		 * @param node the part inside brackets
+		 * @param bracket the closing bracket
+		 * @return the part
+		 */
+		private Node close(Node node, char bracket) {
+			if (peek() != bracket) {
+				throw malformed();
+			}
+
+			pos++;
+			return node;
+		}
+
+		/**
+		 * @param lexeme the spelling of a token
+		 * @return the token
+		 */
+		private Node terminal(String lexeme) {
+			for (TokenType type : TYPES) {
+				if (lexeme.equals(type.lexeme())) {
+					return new Node(Kind.TERMINAL, type.ordinal());
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown token \"" + lexeme + "\" in rule: " + text);
+		}
+
+		/**
+		 * @param name the name of a class token or a nonterminal
+		 * @return the token or the nonterminal
+		 */
+		private Node name(String name) {
+			switch (name) {
+				case "ident":
+					return new Node(Kind.TERMINAL, IDENTIFIER.ordinal());
+				case "number":
+					return new Node(Kind.TERMINAL, NUMBER.ordinal());
+				case "charConst":
+					return new Node(Kind.TERMINAL, CHARACTER.ordinal());
+				default:
+					return new Node(Kind.NONTERMINAL, index(name));
+			}
+		}
+
+		/**
+		 * @return the next character other than whitespace, or 0 at the end
+		 */
+		private char peek() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+
+			return (pos < text.length()) ? text.charAt(pos) : 0;
+		}
+
+		/**
+		 * @return the exception for a malformed rule
+		 */
+		private IllegalArgumentException malformed() {
+			return new IllegalArgumentException("Malformed rule at " + pos + ": " + text);
+		}
+	}
+}
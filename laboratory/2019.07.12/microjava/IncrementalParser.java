@@ -0,0 +1,321 @@
+package microjava;
+
+import java.util.Arrays;
+
+import static microjava.SyntaxTree.NONE;
+
+/**
+ * Keeps the syntax tree of a source that is being edited, and updates it
+ * by parsing again only the part of the source affected by each edit.
+ *
+ * The tokens are updated by an {@link IncrementalScanner}. The tree of the
+ * last source then gives the lists the replaced tokens are in: the
+ * Statements of the innermost Block around them, the ones of each Block
+ * around that one, and the MethodDecl of the Program. In each list, the
+ * part to parse again is from the first element that contains a replaced
+ * token or has one as look ahead token, to the last one that contains
+ * one. From the innermost list out, the part is parsed again until it
+ * spans exactly the same part of the list without errors. Its new nodes
+ * then replace the old ones between the same siblings, and the rest of
+ * the tree is kept by reference, with its token indices moved.
+ *
+ * A Statement or a MethodDecl without errors is parsed the same way
+ * wherever it is, so the tree is the one {@link Parser#parse()} builds.
+ * A source with errors is parsed in full, so the errors are the ones
+ * {@link Parser#parse()} reports. Only the errors of the parser are
+ * reported, not the ones of the scanner.
+ */
+public class IncrementalParser {
+	/**
+	 * Number of ints describing a part of a list parsed again.
+	 */
+	private static final int UNIT = 7;
+
+	/**
+	 * Scanner keeping the tokens of the source.
+	 */
+	private final IncrementalScanner scanner;
+	/**
+	 * Parser of the last full parse, which keeps the tree.
+	 */
+	private Parser parser;
+	/**
+	 * Diagnostics of the last full parse.
+	 */
+	private Diagnostics diagnostics;
+	/**
+	 * Number of nodes of the arena after the last full parse or
+	 * compaction.
+	 */
+	private int compacted;
+	/**
+	 * Parts of lists to parse again, innermost last: the BLOCK or PROGRAM
+	 * node, the child before the part or NONE, the child after the part or
+	 * NONE, 1 for MethodDecl or 0 for Statements, the number of
+	 * Statements around the part, the index of the first token of the
+	 * part, and the index of the token after it.
+	 */
+	private int[] units = new int[UNIT * 16];
+	/**
+	 * Number of parts in {@code units}.
+	 */
+	private int unitCount;
+
+	/**
+	 * Creates an incremental parser, and parses the whole source.
+	 *
+	 * @param text the source
+	 */
+	public IncrementalParser(CharSequence text) {
+		scanner = new IncrementalScanner(text);
+		parseAll();
+	}
+
+	/**
+	 * @return the syntax tree of the current source, whose nodes are only
+	 *         valid until the next edit
+	 */
+	public SyntaxTree tree() {
+		return parser.tree();
+	}
+
+	/**
+	 * @return the number of syntax errors of the current source
+	 */
+	public int errors() {
+		return parser.errors;
+	}
+
+	/**
+	 * @return the syntax errors of the current source
+	 */
+	public Diagnostics diagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return the current source
+	 */
+	public String text() {
+		return scanner.text();
+	}
+
+	/**
+	 * Replaces a part of the source and updates the tree.
+	 *
+	 * @param offset the position of the replaced part
+	 * @param removed the number of characters removed
+	 * @param inserted the text inserted in their place
+	 * @return the number of tokens parsed again
+	 */
+	public int edit(int offset, int removed, CharSequence inserted) {
+		TokenBuffer tokens = scanner.tokens();
+		int before = tokens.size();
+		int scanned = scanner.edit(offset, removed, inserted);
+
+		if (parser.errors > 0) {
+			return parseAll();
+		}
+
+		// The tokens from start to end (excluded) were replaced by the scanned ones.
+		int start = scanner.editStart();
+		int delta = tokens.size() - before;
+		int end = start + scanned - delta;
+
+		findUnits(start, end, before);
+		SyntaxTree tree = parser.tree();
+		if (delta != 0) {
+			tree.moveTokens(end, delta);
+		}
+
+		for (int u = unitCount - 1; u >= 0; u--) {
+			int i = u * UNIT;
+			int first = units[i + 5];
+			int last = units[i + 6] + delta;
+
+			if (parser.reparse(units[i], units[i + 1], units[i + 2], units[i + 3] != 0, units[i + 4], first, last)) {
+				// Replaced subtrees are left in the arena until it doubles.
+				if (tree.size() > 2 * compacted) {
+					tree.compact();
+					compacted = tree.size();
+				}
+
+				return last - first;
+			}
+		}
+
+		return parseAll();
+	}
+
+	/**
+	 * Parses the whole source.
+	 *
+	 * @return the number of tokens parsed
+	 */
+	private int parseAll() {
+		// The source is not copied: the errors are the only use of its text,
+		// and a source with errors is parsed in full again after an edit.
+		Scanner lexer = new Scanner(scanner.buffer(), scanner.length(), scanner.names());
+		parser = new Parser(lexer, scanner.tokens());
+		parser.parseScanned();
+		diagnostics = lexer.diagnostics();
+		compacted = parser.tree().size();
+		return scanner.tokens().size();
+	}
+
+	/**
+	 * Finds the parts of the lists of the tree to parse again for replaced
+	 * tokens, from the list of MethodDecl of the Program inwards. The tree
+	 * has no errors, and still has the old token indices.
+	 *
+	 * @param start the index of the first token replaced
+	 * @param end the index of the token after the last one replaced
+	 * @param size the old number of tokens
+	 */
+	private void findUnits(int start, int end, int size) {
+		SyntaxTree tree = parser.tree();
+		unitCount = 0;
+
+		int parent = tree.root();
+		boolean methods = true;
+		int nesting = 0;
+		// The Program ends with "}" and EOF.
+		int close = size - 2;
+
+		while (true) {
+			int previous = NONE;
+			int child = tree.firstChild(parent);
+
+			while (methods && child != NONE && tree.kind(child) != NodeKind.METHOD_DECL) {
+				previous = child;
+				child = tree.nextSibling(child);
+			}
+
+			if (child == NONE || start < firstToken(child) || end > close) {
+				return;
+			}
+
+			int first = NONE;
+			int firstPrevious = NONE;
+			int firstStart = 0;
+			int childStart = firstToken(child);
+			int next;
+			int lookAhead;
+
+			while (true) {
+				next = tree.nextSibling(child);
+				lookAhead = (next == NONE) ? close : firstToken(next);
+
+				if (first == NONE && lookAhead >= start) {
+					first = child;
+					firstPrevious = previous;
+					firstStart = childStart;
+				}
+
+				if (first != NONE && lookAhead >= end) {
+					break;
+				}
+
+				previous = child;
+				child = next;
+				childStart = lookAhead;
+			}
+
+			addUnit(parent, firstPrevious, next, methods, nesting, firstStart, lookAhead);
+
+			if (first != child) {
+				return;
+			}
+
+			// Goes into the Block around the replaced tokens, if any.
+			int block;
+			if (methods) {
+				block = lastChild(child);
+			} else {
+				block = child;
+				nesting++;
+
+				while (tree.kind(block) == NodeKind.IF || tree.kind(block) == NodeKind.WHILE) {
+					int statement = tree.nextSibling(tree.firstChild(block));
+					int other = tree.nextSibling(statement);
+
+					if (other != NONE && firstToken(other) <= start) {
+						block = other;
+					} else {
+						block = statement;
+						if (other != NONE) {
+							// The "else" is the look ahead token of the statement.
+							lookAhead = firstToken(other) - 1;
+						}
+					}
+					nesting++;
+				}
+			}
+
+			if (tree.kind(block) != NodeKind.BLOCK || start <= tree.token(block)) {
+				return;
+			}
+
+			parent = block;
+			methods = false;
+			close = lookAhead - 1;
+		}
+	}
+
+	/**
+	 * Adds a part of a list to parse again.
+	 *
+	 * @param parent the BLOCK or PROGRAM node of the list
+	 * @param previous the child before the part, or NONE
+	 * @param next the child after the part, or NONE
+	 * @param methods {@code true} for a list of MethodDecl
+	 * @param nesting the number of Statements around the part
+	 * @param start the index of the first token of the part
+	 * @param end the index of the token after the part
+	 */
+	private void addUnit(int parent, int previous, int next, boolean methods, int nesting, int start, int end) {
+		if ((unitCount + 1) * UNIT > units.length) {
+			units = Arrays.copyOf(units, units.length * 2);
+		}
+
+		int i = unitCount++ * UNIT;
+		units[i] = parent;
+		units[i + 1] = previous;
+		units[i + 2] = next;
+		units[i + 3] = methods ? 1 : 0;
+		units[i + 4] = nesting;
+		units[i + 5] = start;
+		units[i + 6] = end;
+	}
+
+	/**
+	 * @param node a node of the tree
+	 * @return the index of the first token of the node, which is the
+	 *         smallest one on the way down its first children
+	 */
+	private int firstToken(int node) {
+		SyntaxTree tree = parser.tree();
+		int token = tree.token(node);
+
+		for (int child = tree.firstChild(node); child != NONE; child = tree.firstChild(child)) {
+			token = Math.min(token, tree.token(child));
+		}
+
+		return token;
+	}
+
+	/**
+	 * @param node a node of the tree, with children
+	 * @return its last child
+	 */
+	private int lastChild(int node) {
+		SyntaxTree tree = parser.tree();
+		int child = tree.firstChild(node);
+
+		while (tree.nextSibling(child) != NONE) {
+			child = tree.nextSibling(child);
+		}
+
+		return child;
+	}
+}
@@ -0,0 +1,212 @@
+package microjava;
+
+import java.util.Arrays;
+
+import static microjava.TokenType.*;
+
+/**
+ * Keeps the tokens of a source that is being edited, and updates them by
+ * scanning again only the part of the source affected by each edit.
+ *
+ * The scan restarts after the last token that ends before the edit, and
+ * stops as soon as the scanner reaches the same state it had in the old
+ * tokens: the end of a token after the edit, moved by the characters
+ * added or removed. From that point the old tokens are kept, only moved
+ * to their new positions. Lines are not kept in the tokens, so they
+ * don't need to be moved.
+ */
+public class IncrementalScanner {
+	/**
+	 * Source characters.
+	 */
+	private char[] source;
+	/**
+	 * Number of characters in {@code source}.
+	 */
+	private int length;
+	/**
+	 * Names of the identifiers, shared by all the scans.
+	 */
+	private final NameTable names = new NameTable();
+	/**
+	 * Tokens of the source.
+	 */
+	private final TokenBuffer tokens = new TokenBuffer();
+	/**
+	 * Tokens scanned again by the last edit.
+	 */
+	private final TokenBuffer rescanned = new TokenBuffer();
+	/**
+	 * Index of the first token replaced by the last edit.
+	 */
+	private int editStart;
+
+	/**
+	 * Creates an incremental scanner and scans the whole source.
+	 *
+	 * @param text the source
+	 */
+	public IncrementalScanner(CharSequence text) {
+		length = text.length();
+		source = new char[Math.max(16, length + length / 8)];
+		for (int i = 0; i < length; i++) {
+			source[i] = text.charAt(i);
+		}
+
+		new Scanner(source, length, names).tokenize(tokens);
+	}
+
+	/**
+	 * @return the tokens of the current source
+	 */
+	public TokenBuffer tokens() {
+		return tokens;
+	}
+
+	/**
+	 * @return the table with the names of the identifiers
+	 */
+	public NameTable names() {
+		return names;
+	}
+
+	/**
+	 * @return the lines of the current source, which give the line and
+	 *         column of the tokens
+	 */
+	public LineIndex lines() {
+		return new LineIndex(source, length);
+	}
+
+	/**
+	 * @return the index of the first token replaced by the last edit, the
+	 *         tokens before it being unchanged
+	 */
+	int editStart() {
+		return editStart;
+	}
+
+	/**
+	 * @return the current source
+	 */
+	public String text() {
+		return new String(source, 0, length);
+	}
+
+	/**
+	 * @return the characters of the current source, from the start of the
+	 *         array, which the next edits change in place
+	 */
+	char[] buffer() {
+		return source;
+	}
+
+	/**
+	 * @return the number of characters of the current source
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * Replaces a part of the source and updates the tokens.
+	 *
+	 * @param offset the position of the replaced part
+	 * @param removed the number of characters removed
+	 * @param inserted the text inserted in their place
+	 * @return the number of tokens scanned again
+	 */
+	public int edit(int offset, int removed, CharSequence inserted) {
+		if (offset < 0 || removed < 0 || offset + removed > length) {
+			throw new IndexOutOfBoundsException("Edit outside of the source: " + offset + "+" + removed);
+		}
+
+		int added = inserted.length();
+		int delta = added - removed;
+
+		if (length + delta > source.length) {
+			source = Arrays.copyOf(source, Math.max(source.length * 2, length + delta));
+		}
+
+		System.arraycopy(source, offset + removed, source, offset + added, length - offset - removed);
+		for (int i = 0; i < added; i++) {
+			source[offset + i] = inserted.charAt(i);
+		}
+
+		length += delta;
+
+		// The scanner looks one character after each token, so the last token
+		// kept is the last one whose following character is before the edit.
+		int kept = lastTokenBefore(offset);
+		Scanner scanner = new Scanner(source, length, names);
+
+		if (kept >= 0) {
+			scanner.restart(end(tokens, kept));
+		}
+
+		rescanned.clear();
+		int editEnd = offset + removed;
+		int old = kept + 1;
+
+		while (true) {
+			TokenType kind = scanner.scanInto(rescanned);
+
+			if (kind == EOF) {
+				old = tokens.size();
+				break;
+			}
+
+			int last = rescanned.size() - 1;
+			int end = end(rescanned, last);
+
+			while (old < tokens.size() && end(tokens, old) + delta < end) {
+				old++;
+			}
+
+			// Same state as after an old token past the edit.
+			if (old < tokens.size()
+				&& tokens.kind(old) != EOF
+				&& end(tokens, old) >= editEnd
+				&& end(tokens, old) + delta == end) {
+				old++;
+				break;
+			}
+		}
+
+		tokens.splice(kept + 1, old, rescanned, delta);
+		editStart = kept + 1;
+		return rescanned.size();
+	}
+
+	/**
+	 * Finds the last token that is followed by a character before a position.
+	 *
+	 * @param position the position
+	 * @return the index of the token, or -1 if there's none
+	 */
+	private int lastTokenBefore(int position) {
+		int low = 0;
+		int high = tokens.size() - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (end(tokens, middle) < position) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return high;
+	}
+
+	/**
+	 * @param buffer a token buffer
+	 * @param i the token index
+	 * @return the position after the token
+	 */
+	private static int end(TokenBuffer buffer, int i) {
+		return buffer.start(i) + buffer.length(i);
+	}
+}
@@ -0,0 +1,162 @@
+package microjava;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Index of the line starts of a source, which turns positions into lines
+ * and columns.
+ *
+ * The scanner only keeps positions, so the index is built the first time
+ * a line or column is asked for, with one pass over the source, and each
+ * position is then resolved with a binary search.
+ *
+ * Lines and columns follow the scanner: an end of line belongs to the
+ * line after it, at column 0, and the other characters of a line are at
+ * columns from 1.
+ */
+public class LineIndex {
+	/**
+	 * End of line character.
+	 */
+	private static final char EOL = '\n';
+
+	/**
+	 * Source characters, decoded from {@code encoded} when first needed.
+	 */
+	private char[] source;
+	/**
+	 * UTF-8 bytes of the source, or {@code null} if it is given as characters.
+	 */
+	private final byte[] encoded;
+	/**
+	 * Number of valid characters in {@code source}, or bytes in {@code encoded}.
+	 */
+	private int length;
+	/**
+	 * Position of the first character of each line, or {@code null} if
+	 * not built yet.
+	 */
+	private int[] starts;
+	/**
+	 * Number of lines in {@code starts}.
+	 */
+	private int lines;
+
+	/**
+	 * Creates the index of a source.
+	 *
+	 * @param source the source characters
+	 * @param length the number of characters in {@code source}
+	 */
+	public LineIndex(char[] source, int length) {
+		this.source = source;
+		this.length = length;
+		encoded = null;
+	}
+
+	/**
+	 * Creates the index of a source kept as UTF-8 bytes. The positions are
+	 * still counted in characters.
+	 *
+	 * @param encoded the source bytes
+	 * @param length the number of bytes in {@code encoded}
+	 */
+	public LineIndex(byte[] encoded, int length) {
+		this.encoded = encoded;
+		this.length = length;
+	}
+
+	/**
+	 * @param position a position from start of source file
+	 * @return the line of the character at the position
+	 */
+	public int line(int position) {
+		int line = lineOf(position) + 1;
+		return isEndOfLine(position) ? line + 1 : line;
+	}
+
+	/**
+	 * @param position a position from start of source file
+	 * @return the column of the character at the position
+	 */
+	public int column(int position) {
+		if (isEndOfLine(position)) {
+			return 0;
+		}
+
+		// Builds the index before reading it.
+		int line = lineOf(position);
+		return position - starts[line] + 1;
+	}
+
+	/**
+	 * @return the source characters
+	 */
+	char[] source() {
+		if (source == null) {
+			source = new String(encoded, 0, length, StandardCharsets.UTF_8).toCharArray();
+			length = source.length;
+		}
+
+		return source;
+	}
+
+	/**
+	 * @param position a position from start of source file
+	 * @return {@code true} if there's an end of line at the position
+	 */
+	private boolean isEndOfLine(int position) {
+		char[] source = source();
+		return position >= 0 && position < length && source[position] == EOL;
+	}
+
+	/**
+	 * Finds the line of a position, building the index if needed.
+	 *
+	 * @param position a position from start of source file
+	 * @return the index of the last line that starts at or before the position
+	 */
+	private int lineOf(int position) {
+		if (starts == null) {
+			build();
+		}
+
+		int low = 0;
+		int high = lines - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+
+			if (starts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Finds the start of every line.
+	 */
+	private void build() {
+		char[] source = source();
+		int[] starts = new int[Math.max(16, length / 32)];
+		int lines = 1;
+
+		for (int i = 0; i < length; i++) {
+			if (source[i] == EOL) {
+				if (lines == starts.length) {
+					starts = Arrays.copyOf(starts, lines * 2);
+				}
+
+				starts[lines++] = i + 1;
+			}
+		}
+
+		this.starts = starts;
+		this.lines = lines;
+	}
+}
@@ -0,0 +1,260 @@
+package microjava;
+
+import java.util.Arrays;
+
+/**
+ * Table of the names found in a source, where each distinct name is stored
+ * once and identified by a small integer.
+ *
+ * Names are looked up straight from a slice of characters, with an open
+ * addressing hash table, so finding a name already in the table does not
+ * create any object.
+ */
+public class NameTable {
+	/**
+	 * Hash slots, holding a name id plus one, or zero if the slot is empty.
+	 */
+	private int[] slots;
+	/**
+	 * Hash of each name.
+	 */
+	private int[] hashes;
+	/**
+	 * Start of each name in {@code chars}, plus the end of the last one.
+	 */
+	private int[] starts;
+	/**
+	 * Characters of all the names.
+	 */
+	private char[] chars;
+	/**
+	 * Canonical string of each name, created when first asked for.
+	 */
+	private String[] strings;
+	/**
+	 * Number of names in the table.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty name table.
+	 */
+	public NameTable() {
+		slots = new int[256];
+		hashes = new int[64];
+		starts = new int[65];
+		chars = new char[512];
+		strings = new String[64];
+	}
+
+	/**
+	 * @return the number of names in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds a name, adding it to the table if it's not there yet.
+	 *
+	 * @param s the characters of the name
+	 * @param offset the position of the name in {@code s}
+	 * @param length the length of the name
+	 * @return the id of the name
+	 */
+	public int add(char[] s, int offset, int length) {
+		int hash = hash(s, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+
+		// Linear probing until the name or an empty slot is found.
+		for (int id; (id = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+			if (hashes[id] == hash && equals(id, s, offset, length)) {
+				return id;
+			}
+		}
+
+		int id = size++;
+		if (id == hashes.length) {
+			hashes = Arrays.copyOf(hashes, id * 2);
+			starts = Arrays.copyOf(starts, id * 2 + 1);
+			strings = Arrays.copyOf(strings, id * 2);
+		}
+
+		int from = starts[id];
+		if (from + length > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, from + length));
+		}
+
+		System.arraycopy(s, offset, chars, from, length);
+		starts[id + 1] = from + length;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+
+		// Keeps the table at most half full.
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+
+		return id;
+	}
+
+	/**
+	 * Finds a name spelled with ASCII bytes, adding it to the table if
+	 * it's not there yet. A name gets the same id from its bytes as from
+	 * its characters.
+	 *
+	 * @param s the bytes of the name
+	 * @param offset the position of the name in {@code s}
+	 * @param length the length of the name
+	 * @return the id of the name
+	 */
+	public int add(byte[] s, int offset, int length) {
+		int hash = hash(s, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+
+		for (int id; (id = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+			if (hashes[id] == hash && equals(id, s, offset, length)) {
+				return id;
+			}
+		}
+
+		char[] name = new char[length];
+		for (int i = 0; i < length; i++) {
+			name[i] = (char) s[offset + i];
+		}
+
+		return add(name, 0, length);
+	}
+
+	/**
+	 * Finds a name of another table, adding it to this table if it's not
+	 * there yet.
+	 *
+	 * @param other the other table
+	 * @param id the id of the name in the other table
+	 * @return the id of the name in this table
+	 */
+	int add(NameTable other, int id) {
+		return add(other.chars, other.starts[id], other.starts[id + 1] - other.starts[id]);
+	}
+
+	/**
+	 * Returns the canonical string of a name.
+	 *
+	 * @param id the id of the name
+	 * @return the name
+	 */
+	public String name(int id) {
+		String name = strings[id];
+
+		if (name == null) {
+			name = new String(chars, starts[id], starts[id + 1] - starts[id]);
+			strings[id] = name;
+		}
+
+		return name;
+	}
+
+	/**
+	 * Checks if the name with an id is spelled as a slice of characters.
+	 *
+	 * @param id the id of the name
+	 * @param s the characters
+	 * @param offset the position of the slice in {@code s}
+	 * @param length the length of the slice
+	 * @return {@code true} if the name is the same
+	 */
+	private boolean equals(int id, char[] s, int offset, int length) {
+		int from = starts[id];
+
+		if (starts[id + 1] - from != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (chars[from + i] != s[offset + i]) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if the name with an id is spelled as a slice of ASCII bytes.
+	 *
+	 * @param id the id of the name
+	 * @param s the bytes
+	 * @param offset the position of the slice in {@code s}
+	 * @param length the length of the slice
+	 * @return {@code true} if the name is the same
+	 */
+	private boolean equals(int id, byte[] s, int offset, int length) {
+		int from = starts[id];
+
+		if (starts[id + 1] - from != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (chars[from + i] != s[offset + i]) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Doubles the number of hash slots and places the names again.
+	 */
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+
+			slots[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Computes the hash of a slice of characters.
+	 *
+	 * @param s the characters
+	 * @param offset the position of the slice in {@code s}
+	 * @param length the length of the slice
+	 * @return the hash, with the high bits mixed into the low ones
+	 */
+	private static int hash(char[] s, int offset, int length) {
+		int h = 0;
+
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + s[offset + i];
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Computes the hash of a slice of ASCII bytes, the same as the hash of
+	 * the same slice as characters.
+	 *
+	 * @param s the bytes
+	 * @param offset the position of the slice in {@code s}
+	 * @param length the length of the slice
+	 * @return the hash, with the high bits mixed into the low ones
+	 */
+	private static int hash(byte[] s, int offset, int length) {
+		int h = 0;
+
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + s[offset + i];
+		}
+
+		return h ^ (h >>> 16);
+	}
+}
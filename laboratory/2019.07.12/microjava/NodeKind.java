@@ -0,0 +1,130 @@
+package microjava;
+
+/**
+ * Represents the possible kinds of nodes of a {@link SyntaxTree}.
+ *
+ * Each kind documents the token of its nodes and their children, in order.
+ * Optional children are left out when missing, as are the parts that could
+ * not be parsed.
+ */
+public enum NodeKind {
+	/**
+	 * "program": the NAME, the CONST_DECL, CLASS_DECL and VAR_DECL, then
+	 * the METHOD_DECL.
+	 */
+	PROGRAM,
+	/**
+	 * "final": the TYPE, the NAME and the NUMBER or CHARACTER.
+	 */
+	CONST_DECL,
+	/**
+	 * "class": the NAME and the VAR_DECL.
+	 */
+	CLASS_DECL,
+	/**
+	 * First token of the type: the TYPE and one NAME per variable.
+	 */
+	VAR_DECL,
+	/**
+	 * First token of the return type: the TYPE or VOID, the NAME, the
+	 * PARAMETER, the VAR_DECL and the BLOCK or SKIPPED_BLOCK.
+	 */
+	METHOD_DECL,
+	/**
+	 * First token of the type: the TYPE and the NAME.
+	 */
+	PARAMETER,
+	/**
+	 * Name of the type, without children.
+	 */
+	TYPE,
+	/**
+	 * Name of the element type, without children.
+	 */
+	ARRAY_TYPE,
+	/**
+	 * "void", without children.
+	 */
+	VOID,
+	/**
+	 * "{": the statements.
+	 */
+	BLOCK,
+	/**
+	 * "{" of a Block skipped by a lazy parse, without children. See
+	 * {@link Parser#parseBody(int)}.
+	 */
+	SKIPPED_BLOCK,
+	/**
+	 * "=": the designator and the expression.
+	 */
+	ASSIGNMENT,
+	/**
+	 * "(": the designator of the method and the arguments.
+	 */
+	CALL,
+	/**
+	 * "if": the CONDITION, the statement and the else statement.
+	 */
+	IF,
+	/**
+	 * "while": the CONDITION and the statement.
+	 */
+	WHILE,
+	/**
+	 * "return": the expression.
+	 */
+	RETURN,
+	/**
+	 * "read": the designator.
+	 */
+	READ,
+	/**
+	 * "print": the expression and the NUMBER of the width.
+	 */
+	PRINT,
+	/**
+	 * ";", without children.
+	 */
+	EMPTY,
+	/**
+	 * Relational operator: the two expressions.
+	 */
+	CONDITION,
+	/**
+	 * Addition or multiplication operator: the two operands.
+	 */
+	BINARY,
+	/**
+	 * "-": the operand.
+	 */
+	NEGATE,
+	/**
+	 * Number constant, without children.
+	 */
+	NUMBER,
+	/**
+	 * Character constant, without children.
+	 */
+	CHARACTER,
+	/**
+	 * "new": the NAME of the class.
+	 */
+	NEW,
+	/**
+	 * "new": the NAME of the element type and the expression of the length.
+	 */
+	NEW_ARRAY,
+	/**
+	 * Identifier, without children.
+	 */
+	NAME,
+	/**
+	 * ".": the designator and the NAME of the field.
+	 */
+	FIELD,
+	/**
+	 * "[": the designator and the expression of the index.
+	 */
+	INDEX
+}
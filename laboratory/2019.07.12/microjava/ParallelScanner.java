@@ -0,0 +1,372 @@
+package microjava;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static microjava.TokenType.*;
+
+/**
+ * Scanner that tokenizes a source by splitting it into chunks at line
+ * starts, and scanning the chunks at the same time on a fork/join pool.
+ * Both produce the same tokens.
+ *
+ * Each chunk is scanned speculatively, as if no token crossed its start,
+ * with its own name table. Tokens only keep positions, so nothing else
+ * depends on the chunks before. The chunks are then joined in order: the
+ * tokens of a chunk are kept from the first one that ends where a kept
+ * token ends, which is where both scans are in the same state. Until that
+ * happens, the scanner of the previous chunk keeps scanning past its end.
+ * Only a character constant that swallows an end of line makes this
+ * necessary.
+ */
+public class ParallelScanner extends Scanner {
+	/**
+	 * Default number of characters of a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Pool where the chunks are scanned.
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * Minimum number of characters of a chunk.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Creates a parallel Scanner that reads the source file through a
+	 * memory map, and scans it on the common pool.
+	 *
+	 * @param path the source file
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public ParallelScanner(Path path) throws IOException {
+		this(path, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a parallel Scanner that reads the source file through a
+	 * memory map.
+	 *
+	 * @param path the source file
+	 * @param pool the pool where the chunks are scanned
+	 * @param chunkSize the minimum number of characters of a chunk
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public ParallelScanner(Path path, ForkJoinPool pool, int chunkSize) throws IOException {
+		super(path);
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Creates a parallel Scanner over an in-memory source.
+	 *
+	 * @param buf the source characters
+	 * @param limit the number of characters in {@code buf}
+	 * @param pool the pool where the chunks are scanned
+	 * @param chunkSize the minimum number of characters of a chunk
+	 */
+	ParallelScanner(char[] buf, int limit, ForkJoinPool pool, int chunkSize) {
+		super(buf, limit, new NameTable());
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Scans the remaining tokens of the source into a token buffer, until
+	 * the EOF token (included). The first chunk is scanned by this scanner
+	 * in the calling thread, and the others in the pool.
+	 *
+	 * @param tokens the buffer where the tokens are appended
+	 * @return the number of tokens appended
+	 */
+	@Override
+	public int tokenize(TokenBuffer tokens) {
+		// The comments are recorded only by a sequential scan.
+		int[] bounds = (ch == EOF_CH || trivia != null) ? new int[0] : bounds();
+
+		if (bounds.length < 3) {
+			return super.tokenize(tokens);
+		}
+
+		int first = tokens.size();
+		Chunk[] chunks = new Chunk[bounds.length - 1];
+		chunks[0] = new Chunk(this, bounds[0], bounds[1], false);
+
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks.length];
+		for (int i = 1; i < chunks.length; i++) {
+			Chunk chunk = new Chunk(bounds[i], bounds[i + 1], i == chunks.length - 1);
+			chunks[i] = chunk;
+			tasks[i] = pool.submit(() -> chunk.scan(chunk.tokens));
+		}
+
+		chunks[0].scan(tokens);
+		for (int i = 1; i < chunks.length; i++) {
+			tasks[i].join();
+		}
+
+		join(chunks, tokens);
+		return tokens.size() - first;
+	}
+
+	/**
+	 * Joins the tokens of the chunks in order, scanning again past the
+	 * end of a chunk until the next one is in the same state.
+	 *
+	 * @param chunks the scanned chunks
+	 * @param tokens the buffer where the tokens are appended
+	 */
+	private void join(Chunk[] chunks, TokenBuffer tokens) {
+		Chunk current = chunks[0];
+		TokenBuffer rescanned = new TokenBuffer(16);
+		int last = tokens.size() - 1;
+		int from = 0;
+
+		for (int i = 1; i < chunks.length && tokens.kind(last) != EOF; ) {
+			Chunk next = chunks[i];
+			int end = end(tokens, last);
+			int index = next.indexOfEnd(end);
+
+			if (index >= 0) {
+				current.report(from);
+				next.append(tokens, index + 1);
+				current = next;
+				from = end;
+				i++;
+			} else if (end > next.lastEnd()) {
+				// The chunk is inside a token of the previous one.
+				i++;
+			} else {
+				rescanned.clear();
+				current.scanner.scanInto(rescanned);
+				current.append(tokens, rescanned, 0);
+			}
+
+			last = tokens.size() - 1;
+		}
+
+		while (tokens.kind(last) != EOF) {
+			rescanned.clear();
+			current.scanner.scanInto(rescanned);
+			current.append(tokens, rescanned, 0);
+			last = tokens.size() - 1;
+		}
+
+		current.report(from);
+
+		// Leaves this scanner at the end, as a sequential scan would.
+		if (current.scanner != this) {
+			restart(tokens.start(last));
+		}
+	}
+
+	/**
+	 * Finds the bounds of the chunks, from the lookahead character to the
+	 * end of the source. Each chunk but the first one starts a line.
+	 *
+	 * @return the start of each chunk, followed by the end of the source
+	 */
+	private int[] bounds() {
+		List<Integer> bounds = new ArrayList<>();
+		int start = pos - 1;
+		bounds.add(start);
+
+		while (start + chunkSize < limit) {
+			int i = start + chunkSize;
+			while (i < limit && buf[i - 1] != '\n') {
+				i++;
+			}
+
+			if (i >= limit) break;
+			bounds.add(i);
+			start = i;
+		}
+
+		bounds.add(limit);
+
+		int[] result = new int[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param buffer a token buffer
+	 * @param i the token index
+	 * @return the position after the token
+	 */
+	private static int end(TokenBuffer buffer, int i) {
+		return buffer.start(i) + buffer.length(i);
+	}
+
+	/**
+	 * A part of the source and the tokens scanned from it.
+	 */
+	private class Chunk {
+		/**
+		 * Scanner of the chunk, which goes on past its end if needed.
+		 */
+		final Scanner scanner;
+		/**
+		 * Start of the chunk.
+		 */
+		final int start;
+		/**
+		 * End of the chunk.
+		 */
+		final int end;
+		/**
+		 * If the chunk is the last one, and is scanned until EOF.
+		 */
+		final boolean last;
+		/**
+		 * Tokens scanned from the chunk, up to the first one reaching its end.
+		 */
+		final TokenBuffer tokens;
+		/**
+		 * Ids in the name table of this scanner of the names of the chunk.
+		 */
+		int[] ids = new int[0];
+
+		/**
+		 * Creates the first chunk, scanned by this scanner.
+		 *
+		 * @param scanner this scanner
+		 * @param start the start of the chunk
+		 * @param end the end of the chunk
+		 * @param last if the chunk is the last one
+		 */
+		Chunk(Scanner scanner, int start, int end, boolean last) {
+			this.scanner = scanner;
+			this.start = start;
+			this.end = end;
+			this.last = last;
+			// Sized for about one token every four characters.
+			tokens = (scanner == ParallelScanner.this) ? null : new TokenBuffer((end - start) / 4);
+		}
+
+		/**
+		 * Creates a chunk that starts a line, with its own scanner.
+		 *
+		 * @param start the start of the chunk
+		 * @param end the end of the chunk
+		 * @param last if the chunk is the last one
+		 */
+		Chunk(int start, int end, boolean last) {
+			this(new Scanner(buf, limit, new NameTable()), start, end, last);
+			scanner.restart(start);
+		}
+
+		/**
+		 * Scans the tokens of the chunk until one reaches its end.
+		 *
+		 * @param tokens the buffer where the tokens are appended
+		 */
+		void scan(TokenBuffer tokens) {
+			TokenType kind;
+
+			do {
+				kind = scanner.scanInto(tokens);
+			} while (kind != EOF && (last || scanner.pos - 1 < end));
+		}
+
+		/**
+		 * Finds the token that ends at a position, other than EOF.
+		 *
+		 * @param position the position
+		 * @return the index of the token, or -1 if there's none
+		 */
+		int indexOfEnd(int position) {
+			int low = 0;
+			int high = tokens.size() - 1;
+
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+
+				if (ParallelScanner.end(tokens, middle) < position) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return (low < tokens.size()
+				&& ParallelScanner.end(tokens, low) == position
+				&& tokens.kind(low) != EOF) ? low : -1;
+		}
+
+		/**
+		 * @return the position after the last token of the chunk
+		 */
+		int lastEnd() {
+			return ParallelScanner.end(tokens, tokens.size() - 1);
+		}
+
+		/**
+		 * Appends the tokens of the chunk from an index on.
+		 *
+		 * @param to the buffer where the tokens are appended
+		 * @param first the index of the first token
+		 */
+		void append(TokenBuffer to, int first) {
+			append(to, tokens, first);
+		}
+
+		/**
+		 * Appends tokens scanned by the scanner of the chunk, with the name
+		 * ids of this scanner.
+		 *
+		 * @param to the buffer where the tokens are appended
+		 * @param from the buffer of the tokens
+		 * @param first the index of the first token
+		 */
+		void append(TokenBuffer to, TokenBuffer from, int first) {
+			to.append(from, first, ids());
+		}
+
+		/**
+		 * Adds the names of the chunk to the name table of this scanner.
+		 *
+		 * @return the id in the table of this scanner of each name of the
+		 *         chunk, or {@code null} if the chunk uses that table
+		 */
+		int[] ids() {
+			if (scanner == ParallelScanner.this) {
+				return null;
+			}
+
+			int known = ids.length;
+			int size = scanner.names().size();
+
+			if (known < size) {
+				ids = Arrays.copyOf(ids, size);
+				for (int id = known; id < size; id++) {
+					ids[id] = names().add(scanner.names(), id);
+				}
+			}
+
+			return ids;
+		}
+
+		/**
+		 * Reports to this scanner the errors of the tokens kept from the
+		 * chunk, which are the ones from a position on.
+		 *
+		 * @param from the position of the first token kept
+		 */
+		void report(int from) {
+			if (scanner != ParallelScanner.this) {
+				diagnostics().addAll(scanner.diagnostics(), from);
+			}
+		}
+	}
+}
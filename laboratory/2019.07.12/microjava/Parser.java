@@ -4,73 +4,234 @@ package microjava;
 // import MJ.SymTab.*;
 // import MJ.CodeGen.*;
 
+import static microjava.SyntaxTree.NONE;
 import static microjava.TokenType.*;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Recursive descent parser of MicroJava.
+ *
+ * The grammar is the one in {@link Grammar#MICROJAVA}, whose rules are
+ * repeated in the Javadoc of the parse methods. The sets of tokens the
+ * parser tests come from its FIRST and FOLLOW sets.
+ *
+ * Each parse method returns the node of what it parsed in a
+ * {@link SyntaxTree}, whose kinds are described in {@link NodeKind}.
+ *
+ * The method declarations can be parsed in parallel, see
+ * {@link #setParallel(ForkJoinPool, int)}, and their bodies can be skipped
+ * until they are needed, see {@link #setLazy(boolean)}.
+ *
+ * Errors are recovered from without going back: every loop of the
+ * parser scans a token or ends, also at EOF, and the tokens of a method
+ * declaration are only scanned again by a lazy or parallel parse.
+ * Statements nested deeper than {@link #MAX_NESTING} are reported and
+ * skipped by matching their braces, so the recursion is bounded too, and
+ * the time of a parse is linear in the number of tokens however broken
+ * the source is.
+ */
 public class Parser {
 
-	public static final List<TokenType> STATEMENT_STARTERS = Arrays.asList(
-		IDENTIFIER,
-		IF,
-		WHILE,
-		RETURN,
-		READ,
-		PRINT,
-		LEFT_BRACE,
-		SEMICOLON
-	);
-
-	public static final List<TokenType> EXPR_STARTERS = Arrays.asList(
-		MINUS,
-		IDENTIFIER,
-		NUMBER,
-		CHARACTER,
-		NEW,
-		LEFT_PAREN
-	);
-
-	public static final List<TokenType> RELATIONAL_OPERATORS = Arrays.asList(
-		EQUAL,
-		NOT_EQUAL,
-		LESS,
-		LESS_EQUAL,
-		GREATER,
-		GREATER_EQUAL
-	);
-
-	public static final List<TokenType> ADDITION_OPERATOR = Arrays.asList(
-		PLUS,
-		MINUS
-	);
-
-	public static final List<TokenType> MULTIPLICATION_OPERATOR =	Arrays.asList(
-		TIMES,
-		SLASH,
-		REM
-	);
+	/**
+	 * Default minimum number of tokens of the method declarations parsed
+	 * by one task.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1 << 12;
+
+	/**
+	 * Maximum number of Statements around a Statement. The Statements are
+	 * parsed recursively, so deeper ones are skipped instead.
+	 */
+	public static final int MAX_NESTING = 500;
+
+	/**
+	 * Grammar parsed.
+	 */
+	private static final Grammar GRAMMAR = Grammar.MICROJAVA;
+
+	/**
+	 * Tokens that start a statement.
+	 */
+	public static final long STATEMENT_STARTERS = GRAMMAR.first("Statement");
+
+	/**
+	 * Tokens that start an expression.
+	 */
+	public static final long EXPR_STARTERS = GRAMMAR.first("Expr");
+
+	/**
+	 * Relational operators.
+	 */
+	public static final long RELATIONAL_OPERATORS = GRAMMAR.first("Relop");
+
+	/**
+	 * Addition operators.
+	 */
+	public static final long ADDITION_OPERATOR = GRAMMAR.first("Addop");
+
+	/**
+	 * Multiplication operators.
+	 */
+	public static final long MULTIPLICATION_OPERATOR = GRAMMAR.first("Mulop");
+
+	/**
+	 * Tokens where parsing resumes after an invalid start of statement:
+	 * the ones that start or follow a statement, and EOF. An identifier is
+	 * too common inside a statement to be a safe anchor, and "else" would
+	 * be found again by the next statement, so both are skipped.
+	 */
+	private static final long STATEMENT_ANCHORS =
+		(STATEMENT_STARTERS | GRAMMAR.follow("Statement") | Grammar.setOf(EOF)) & ~Grammar.setOf(IDENTIFIER, ELSE);
 
 	
+	/**
+	 * Frame of the Expr being parsed by a call to {@link #parseExpr()}.
+	 */
+	private static final int FRAME_EXPR = 0;
+	/**
+	 * Frame of a "(" Expr ")" Factor.
+	 */
+	private static final int FRAME_GROUP = 1;
+	/**
+	 * Frame of a "[" Expr "]" selector, whose node is the designator.
+	 */
+	private static final int FRAME_INDEX = 2;
+	/**
+	 * Frame of a "new" ident "[" Expr "]" Factor, whose node is the NAME.
+	 */
+	private static final int FRAME_NEW_ARRAY = 3;
+	/**
+	 * Frame of an ActPars, whose node is the position of the designator
+	 * in the operands.
+	 */
+	private static final int FRAME_ARGUMENTS = 4;
+	/**
+	 * Frame of a leading "-", waiting for its Term.
+	 */
+	private static final int FRAME_NEGATE = 5;
+	/**
+	 * Frame of an Addop, waiting for its right Term.
+	 */
+	private static final int FRAME_ADD = 6;
+	/**
+	 * Frame of a Mulop, waiting for its right Factor.
+	 */
+	private static final int FRAME_MULTIPLY = 7;
+
+	/**
+	 * State at the start of an Expr.
+	 */
+	private static final int STATE_EXPR = 0;
+	/**
+	 * State at the start of a Factor.
+	 */
+	private static final int STATE_FACTOR = 1;
+	/**
+	 * State after a part of a Designator.
+	 */
+	private static final int STATE_DESIGNATOR = 2;
+	/**
+	 * State after a Factor.
+	 */
+	private static final int STATE_OPERATOR = 3;
+	/**
+	 * State after an Expr.
+	 */
+	private static final int STATE_END = 4;
+
 	/**
 	 * Scanner returning token to parse.
 	 */
 	private Scanner scanner;
 
 	/**
-	 * Current token.
+	 * Tokens of the source.
+	 */
+	private final TokenBuffer tokens;
+
+	/**
+	 * Stream over {@code tokens}, whose current token is the look ahead.
+	 */
+	private final TokenStream stream;
+
+	/**
+	 * Syntax tree of the last source parsed.
+	 */
+	private final SyntaxTree tree;
+
+	/**
+	 * If the tokens are scanned by another thread while parsing.
+	 */
+	private boolean pipelined;
+
+	/**
+	 * If the bodies of the methods are skipped until they are needed.
 	 */
-	private Token token;
+	private boolean lazy;
 
 	/**
-	 * Look ahead token.
+	 * Pool where the method declarations are parsed, or {@code null} to
+	 * parse them in this thread.
 	 */
-	private Token nextToken;
+	private ForkJoinPool pool;
 
 	/**
-	 * Always contains nextToken.kind.
+	 * Minimum number of tokens of the method declarations parsed by one
+	 * task.
+	 */
+	private int batchSize;
+
+	/**
+	 * Batches of method declarations given to the pool, in source order,
+	 * or {@code null} if the source is not parsed in parallel.
+	 */
+	private List<MethodBatch> batches;
+
+	/**
+	 * Diagnostics where the errors are reported.
+	 */
+	private Diagnostics diagnostics;
+
+	/**
+	 * Always contains the kind of the look ahead token.
 	 */
 	private TokenType sym;
 
+	/**
+	 * Kinds of the frames of the expression stack.
+	 */
+	private int[] frameKinds = new int[16];
+
+	/**
+	 * Token indices of the frames of the expression stack.
+	 */
+	private int[] frameTokens = new int[16];
+
+	/**
+	 * Nodes of the frames of the expression stack.
+	 */
+	private int[] frameNodes = new int[16];
+
+	/**
+	 * Number of frames on the expression stack.
+	 */
+	private int frames;
+
+	/**
+	 * Operands of the expression stack.
+	 */
+	private int[] operandStack = new int[16];
+
+	/**
+	 * Number of operands on the expression stack.
+	 */
+	private int operands;
+
 	/**
 	 * Errors count.
 	 */
@@ -81,28 +242,132 @@ public class Parser {
 	 */
 	private int errDist;
 
+	/**
+	 * Number of Statements around the one being parsed.
+	 */
+	private int nesting;
+
+	/**
+	 * Index of the token of the first error found, reported or not, since
+	 * it was set to -1.
+	 */
+	private int firstError = -1;
+
 	/**
 	 * Creates a new parser, with the provided Scanner for obtaining tokens.
 	 * 
 	 * @param scanner the scanner
 	 */
 	public Parser(Scanner scanner) {
+		this(scanner, new TokenBuffer());
+	}
+
+	/**
+	 * Creates a new parser, with the provided Scanner for obtaining tokens
+	 * and a token buffer to hold them, which can be reused between parsers.
+	 * 
+	 * @param scanner the scanner
+	 * @param tokens the token buffer
+	 */
+	public Parser(Scanner scanner, TokenBuffer tokens) {
 		this.scanner = scanner;
+		this.tokens = tokens;
+		stream = new TokenStream(tokens);
+		tree = new SyntaxTree(tokens, scanner.names());
+		diagnostics = scanner.diagnostics();
+	}
+
+	/**
+	 * Sets if the tokens are scanned by another thread while parsing.
+	 * 
+	 * The scanner thread publishes the tokens in batches into a ring,
+	 * and waits while the ring is full, so it never gets more than the
+	 * size of the ring ahead of the parser. It scans the whole source even
+	 * when the parser stops before its end, so the errors are the same as
+	 * when the tokens are all scanned first.
+	 * 
+	 * The ring only bounds how far the scanner gets ahead, not the memory
+	 * of the parse: the parser still keeps every token in its buffer,
+	 * since the nodes of the syntax tree, the skipped bodies of a lazy
+	 * parse and the incremental parser refer to the tokens by index.
+	 * 
+	 * @param pipelined {@code true} to scan in another thread
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Sets if the bodies of the methods are skipped until they are needed,
+	 * for tools that only need the declarations.
+	 * 
+	 * The Block of a MethodDecl is skipped by matching its braces, and a
+	 * SKIPPED_BLOCK node stands for it in the tree, until
+	 * {@link #parseBody(int)} parses it. Its errors are only reported
+	 * then. A Block whose braces are not balanced is parsed at once.
+	 * 
+	 * @param lazy {@code true} to skip the bodies of the methods
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * Sets if the method declarations are parsed in parallel.
+	 * 
+	 * The tokens are all scanned first. While parsing the rest of the
+	 * program, the parser finds the end of each method declaration by
+	 * matching its braces, and skips it. The declarations are given to the
+	 * pool in batches, each parsed by a parser of its own into a tree and
+	 * diagnostics of its own, and they are joined in source order at the
+	 * end of the program. The tree and the errors are the same as when
+	 * parsing in order.
+	 * 
+	 * If a method declaration does not end where its braces do, which only
+	 * happens with errors, the whole source is parsed again in order. The
+	 * pipelined scan is not used when parsing in parallel.
+	 * 
+	 * @param pool the pool where the method declarations are parsed, or
+	 *        {@code null} to parse them in this thread
+	 * @param batchSize the minimum number of tokens of the method
+	 *        declarations parsed by one task
+	 */
+	public void setParallel(ForkJoinPool pool, int batchSize) {
+		this.pool = pool;
+		this.batchSize = batchSize;
 	}
 
 	/**
 	 * Reads the text token from scanner.
 	 */
 	private void scan() {
-		token = nextToken;
-		nextToken = scanner.next();
-		sym = nextToken.kind;
+		// The EOF token is the last one, and it is returned again at the end.
+		sym = stream.next();
 		errDist++;
-		/*
-		System.out.print("line " + la.line + ", col " + la.col + ": " + name[sym]);
-		if (sym == ident) System.out.print(" (" + la.string + ")");
-		if (sym == number || sym == charCon) System.out.print(" (" + la.val + ")");
-		System.out.println();*/
+	}
+
+	/**
+	 * @return the syntax tree of the last source parsed, whose nodes refer
+	 *         to the tokens of the parser
+	 */
+	public SyntaxTree tree() {
+		return tree;
+	}
+
+	/**
+	 * @return the stream of tokens, for looking further ahead than the
+	 *         look ahead token
+	 */
+	public TokenStream stream() {
+		return stream;
+	}
+
+	/**
+	 * @param set a set of tokens
+	 * @return {@code true} if the look ahead token is in the set
+	 */
+	private boolean at(long set) {
+		return (set & (1L << sym.ordinal())) != 0;
 	}
 
 	/**
@@ -117,18 +382,35 @@ public class Parser {
 		if (sym == expected) {
 			scan();
 		} else {
-		  error(expected + " expected, found " + sym);
+		  error(Diagnostics.Code.EXPECTED, expected.ordinal(), sym.ordinal());
 		}
 	}
 
 	/**
-	 * Reports a compiler error.
+	 * Reports a compiler error without arguments.
 	 * 
-	 * @param msg the error message
+	 * @param code the error
 	 */
-	public void error(String msg) {
+	public void error(Diagnostics.Code code) {
+		error(code, 0, 0);
+	}
+
+	/**
+	 * Reports a compiler error to the diagnostics of the scanner, or of
+	 * the part of the source being parsed apart. The message is only
+	 * formatted when the report is rendered.
+	 * 
+	 * @param code the error
+	 * @param first the first argument of the message
+	 * @param second the second argument of the message
+	 */
+	public void error(Diagnostics.Code code, int first, int second) {
+		if (firstError < 0) {
+			firstError = stream.index();
+		}
+
 		if (errDist >= 3) {
-			System.err.println("Line " + nextToken.line + " col " + nextToken.column + ": " + msg);
+			diagnostics.report(code, tokens.end(stream.index()), first, second);
 			errors++;
 		}
 		errDist = 0;
@@ -139,19 +421,22 @@ public class Parser {
 	 *
 	 * Program = "program" ident {ConstDecl | ClassDecl | VarDecl}
 	 *           '{' {MethodDecl} '}'
+	 *
+	 * @return the PROGRAM node
 	 */
-	private void parseProgram() {
+	private int parseProgram() {
+		int program = tree.add(NodeKind.PROGRAM, stream.index());
 		check(PROGRAM);
-		check(IDENTIFIER);
+		int last = tree.append(program, NONE, parseName());
 
 		// {ConstDecl | ClassDecl | VarDecl}
 		while (true) {
 			if (sym == FINAL) {
-				parseConstDecl();
+				last = tree.append(program, last, parseConstDecl());
 			} else if (sym == CLASS) {
-				parseClassDecl();
+				last = tree.append(program, last, parseClassDecl());
 			} else if (sym == IDENTIFIER) {
-				parseVarDecl();
+				last = tree.append(program, last, parseVarDecl());
 			} else {
 				break;
 			}
@@ -160,137 +445,322 @@ public class Parser {
 		check(LEFT_BRACE);
 
 		// {MethodDecl}
+		if (batches != null) {
+			last = parseMethodDecls(program, last);
+		}
+
 		while (sym == IDENTIFIER || sym == VOID) {
-			parseMethodDecl();
+			last = tree.append(program, last, parseMethodDecl());
 		}
 
 		check(RIGHT_BRACE);
+		return program;
+	}
+
+	/**
+	 * Parses the MethodDecl on the pool, up to the first one whose braces
+	 * are not balanced.
+	 *
+	 * @param program the PROGRAM node
+	 * @param last the last child of the PROGRAM node
+	 * @return the new last child of the PROGRAM node
+	 */
+	private int parseMethodDecls(int program, int last) {
+		MethodBatch batch = null;
+		// Tokens recognized since last error, after the first token of a declaration.
+		int distance = errDist;
+
+		while (sym == IDENTIFIER || sym == VOID) {
+			int start = stream.index();
+			int end = closingBrace();
+			if (end < 0) {
+				break;
+			}
+
+			if (batch == null || batch.size >= batchSize) {
+				if (batch != null) {
+					batch.fork();
+				}
+				batch = new MethodBatch();
+				batches.add(batch);
+			}
+			batch.add(start, end);
+
+			stream.reset(end);
+			scan();
+		}
+
+		if (batch != null) {
+			batch.fork();
+		}
+
+		for (MethodBatch b : batches) {
+			b.task.join();
+			if (!b.split) continue;
+
+			int offset = tree.addAll(b.parser.tree);
+			for (int i = 0; i < b.methods; i++) {
+				last = tree.append(program, last, b.roots[i] + offset);
+			}
+
+			distance = b.join(distance);
+			errors += b.parser.errors;
+		}
+
+		errDist = distance;
+		return last;
+	}
+
+	/**
+	 * Finds the end of the MethodDecl or the Block that starts with the
+	 * look ahead token by matching braces: it ends with the brace that
+	 * closes the first one opened. The tokens are looked at through the
+	 * stream, which takes them from the scanner thread if pipelined.
+	 *
+	 * @return the index of the closing brace, or -1 if a brace closes
+	 *         before one opens or the source ends before
+	 */
+	private int closingBrace() {
+		int start = stream.index();
+		int depth = 0;
+
+		for (int i = start; ; i++) {
+			switch (stream.peek(i - start)) {
+				case LEFT_BRACE:
+					depth++;
+					break;
+				case RIGHT_BRACE:
+					if (depth == 0) return -1;
+					if (--depth == 0) return i;
+					break;
+				case EOF:
+					return -1;
+				default:
+					break;
+			}
+		}
 	}
 
 	/**
 	 * Parses a ConstDecl
 	 * 
 	 * ConstDecl = "final" Type ident "=" (number | charConst) ";"
+	 *
+	 * @return the CONST_DECL node
 	 */
-	private void parseConstDecl() {
+	private int parseConstDecl() {
+		int decl = tree.add(NodeKind.CONST_DECL, stream.index());
 		check(FINAL);
-		parseType();
-		check(IDENTIFIER);
+		int last = tree.append(decl, NONE, parseType());
+		last = tree.append(decl, last, parseName());
 		check(ASSIGN);
 
-		if (sym != NUMBER && sym != CHARACTER) {
-			error("Expected number or char constant");
+		if (sym == NUMBER) {
+			tree.append(decl, last, leaf(NodeKind.NUMBER));
+		} else if (sym == CHARACTER) {
+			tree.append(decl, last, leaf(NodeKind.CHARACTER));
+		} else {
+			error(Diagnostics.Code.CONSTANT_EXPECTED);
+			scan();
 		}
 
-		scan();
 		check(SEMICOLON);
+		return decl;
 	}
 	
 	/**
 	 * Parses a ClassDecl.
 	 * 
 	 * ClassDecl = "class" ident "{" {VarDecl} "}"
+	 *
+	 * @return the CLASS_DECL node
 	 */
-	private void parseClassDecl() {
+	private int parseClassDecl() {
+		int decl = tree.add(NodeKind.CLASS_DECL, stream.index());
 		check(CLASS);
-		check(IDENTIFIER);
+		int last = tree.append(decl, NONE, parseName());
 		check(LEFT_BRACE);
 
 		while (sym == IDENTIFIER) {
-			parseVarDecl();
+			last = tree.append(decl, last, parseVarDecl());
 		}
 
 		check(RIGHT_BRACE);
+		return decl;
 	}
 
 	/**
 	 * Parses a VarDecl.
 	 * 
 	 * VarDecl = Type ident {"," ident} ";"
+	 *
+	 * @return the VAR_DECL node
 	 */
-	private void parseVarDecl() {
-		parseType();
-		check(IDENTIFIER);
+	private int parseVarDecl() {
+		int decl = tree.add(NodeKind.VAR_DECL, stream.index());
+		int last = tree.append(decl, NONE, parseType());
+		last = tree.append(decl, last, parseName());
 
 		while (sym == COMMA) {
 			check(COMMA);
-			check(IDENTIFIER);
+			last = tree.append(decl, last, parseName());
 		}
 
 		check(SEMICOLON);
+		return decl;
 	}
 
 	/**
 	 * Parses a MethodDecl.
 	 * 
-	 * MethodDecl = (Type | "void") ident "(" [FormPars] ") {VarDecl} Block"
+	 * MethodDecl = (Type | "void") ident "(" [FormPars] ")" {VarDecl} Block
+	 *
+	 * @return the METHOD_DECL node
 	 */
-	private void parseMethodDecl() {
+	private int parseMethodDecl() {
+		int method = tree.add(NodeKind.METHOD_DECL, stream.index());
+		int last;
+
 		if (sym == IDENTIFIER) {
-			parseType();
+			last = tree.append(method, NONE, parseType());
+		} else if (sym == VOID) {
+			last = tree.append(method, NONE, leaf(NodeKind.VOID));
 		} else {
 			check(VOID);
+			last = NONE;
 		}
 
-		check(IDENTIFIER);
+		last = tree.append(method, last, parseName());
 		check(LEFT_PAREN);
 
 		if (sym == IDENTIFIER) {
-			parseFormPars();
+			last = parseFormPars(method, last);
 		}
 
 		check(RIGHT_PAREN);
 
 		while (sym == IDENTIFIER) {
-			parseVarDecl();
+			last = tree.append(method, last, parseVarDecl());
+		}
+
+		if (lazy && sym == LEFT_BRACE) {
+			int end = closingBrace();
+
+			if (end >= 0) {
+				// Skips the body as if it was parsed without errors.
+				tree.append(method, last, tree.add(NodeKind.SKIPPED_BLOCK, stream.index()));
+				errDist += end - stream.index();
+				stream.reset(end);
+				scan();
+				return method;
+			}
 		}
 
-		parseBlock();
+		tree.append(method, last, parseBlock());
+		return method;
+	}
+
+	/**
+	 * Parses the body of a method skipped by a lazy parse, the first time
+	 * it is asked for: its BLOCK then replaces the SKIPPED_BLOCK in the
+	 * tree, and its errors are reported.
+	 *
+	 * @param method a METHOD_DECL node of the tree
+	 * @return the BLOCK node of the method
+	 */
+	public int parseBody(int method) {
+		int previous = NONE;
+		int body = tree.firstChild(method);
+
+		// The body is the last child.
+		while (tree.nextSibling(body) != NONE) {
+			previous = body;
+			body = tree.nextSibling(body);
+		}
+
+		if (tree.kind(body) != NodeKind.SKIPPED_BLOCK) {
+			return body;
+		}
+
+		stream.reset(tree.token(body) - 1);
+		errDist = 3;
+		scan();
+		int block = parseBlock();
+		tree.replace(method, previous, body, block);
+		return block;
 	}
 
 	/**
 	 * Parses a Type.
 	 * 
 	 * Type = ident ["[" "]"]
+	 *
+	 * @return the TYPE or ARRAY_TYPE node
 	 */
-	private void parseType() {
+	private int parseType() {
+		int token = stream.index();
+		NodeKind kind = NodeKind.TYPE;
 		check(IDENTIFIER);
 
 		if (sym == LEFT_BRACKET) {
 			check(LEFT_BRACKET);
 			check(RIGHT_BRACKET);
+			kind = NodeKind.ARRAY_TYPE;
 		}
+
+		return tree.add(kind, token);
 	}
 
 	/**
-	 * Parses a FormPars.
+	 * Parses a FormPars, into a PARAMETER node per parameter.
 	 * 
 	 * FormPars = Type ident {"," Type ident}
+	 *
+	 * @param method the METHOD_DECL node
+	 * @param last the last child of the method
+	 * @return the new last child of the method
 	 */
-	private void parseFormPars() {
-		parseType();
-		check(IDENTIFIER);
+	private int parseFormPars(int method, int last) {
+		last = tree.append(method, last, parseParameter());
 
 		while (sym == COMMA) {
 			check(COMMA);
-			parseType();
-			check(IDENTIFIER);
+			last = tree.append(method, last, parseParameter());
 		}
+
+		return last;
+	}
+
+	/**
+	 * Parses a parameter of a FormPars.
+	 *
+	 * Type ident
+	 *
+	 * @return the PARAMETER node
+	 */
+	private int parseParameter() {
+		int token = stream.index();
+		return tree.add(NodeKind.PARAMETER, token, parseType(), parseName());
 	}
 
 	/**
 	 * Parses a Block.
 	 * 
 	 * Block = '{' {Statement} '}'
+	 *
+	 * @return the BLOCK node
 	 */
-	private void parseBlock() {
+	private int parseBlock() {
+		int block = tree.add(NodeKind.BLOCK, stream.index());
+		int last = NONE;
 		check(LEFT_BRACE);
 
 		while (sym != RIGHT_BRACE && sym != EOF) {
-			parseStatement();
+			last = tree.append(block, last, parseStatement());
 		}
 
 		check(RIGHT_BRACE);
+		return block;
 	}
 
 	/**
@@ -298,46 +768,85 @@ public class Parser {
 	 * 
 	 * Statement = SimpleStatement
 	 *           | IfStatement
-	 *           | While Statement
+	 *           | WhileStatement
    *           | ReturnStatement
 	 *           | ReadStatement
 	 *           | PrintStatement
 	 *           | Block
 	 *           | ";"
+	 *
+	 * @return the node of the statement, or NONE if there's none
 	 */
-	private void parseStatement() {
-		if (!STATEMENT_STARTERS.contains(sym)) {
-			error("Invalid start of statement");
+	private int parseStatement() {
+		if (nesting == MAX_NESTING) {
+			error(Diagnostics.Code.NESTING_TOO_DEEP);
+			skipStatement();
+			return NONE;
+		}
 
-			while (sym != SEMICOLON && sym != RIGHT_BRACE) {
-				scan();
-			}
+		if (!at(STATEMENT_STARTERS)) {
+			error(Diagnostics.Code.INVALID_STATEMENT_START);
 
-			if (sym == SEMICOLON) {
+			// Panic mode: skips to a token that starts or follows a statement.
+			while (!at(STATEMENT_ANCHORS)) {
 				scan();
 			}
 
 			errDist = 0;
 		}
 
+		int statement;
+		nesting++;
+
 		if (sym == IDENTIFIER) {
-			parseSimpleStatement();
+			statement = parseSimpleStatement();
 		} else if (sym == IF) {
-			parseIfStatement();
+			statement = parseIfStatement();
 		} else if (sym == WHILE) {
-			parseWhileStatement();
+			statement = parseWhileStatement();
 		} else if (sym == RETURN) {
-			parseReturnStatement();
+			statement = parseReturnStatement();
 		} else if (sym == READ) {
-		  parseReadStatement();
+		  statement = parseReadStatement();
 		} else if (sym == PRINT) {
-			parsePrintStatement();
+			statement = parsePrintStatement();
 		} else if (sym == LEFT_BRACE) {
-			parseBlock();
+			statement = parseBlock();
 		} else if (sym == SEMICOLON) {
-			check(SEMICOLON);
+			statement = leaf(NodeKind.EMPTY);
 		} else {
-			error("Illegal start of statement: " + sym);
+			error(Diagnostics.Code.ILLEGAL_STATEMENT_START, sym.ordinal(), 0);
+			statement = NONE;
+		}
+
+		nesting--;
+		return statement;
+	}
+
+	/**
+	 * Skips a Statement without parsing it, up to its ";" or the "}" of
+	 * the Block it opens, and the "else" parts after them, or up to a "}"
+	 * closing an outer Block.
+	 */
+	private void skipStatement() {
+		int depth = 0;
+
+		while (sym != EOF) {
+			if (sym == LEFT_BRACE) {
+				depth++;
+			} else if (sym == RIGHT_BRACE) {
+				if (depth == 0) {
+					return;
+				}
+				depth--;
+			}
+
+			boolean end = depth == 0 && (sym == SEMICOLON || sym == RIGHT_BRACE);
+			scan();
+
+			if (end && sym != ELSE) {
+				return;
+			}
 		}
 	}
 
@@ -345,237 +854,839 @@ public class Parser {
 	 * Parses a SimpleStatement.
 	 * 
 	 * SimpleStatement = Designator ("=" Expr | ActPars) ";"
+	 *
+	 * @return the ASSIGNMENT or CALL node, or NONE if it's neither
 	 */
-	private void parseSimpleStatement() {
-		parseDesignator();
+	private int parseSimpleStatement() {
+		int designator = parseDesignator();
+		int statement = NONE;
 
 		if (sym == ASSIGN) {
+			int token = stream.index();
 			check(ASSIGN);
-			parseExpr();
+			statement = tree.add(NodeKind.ASSIGNMENT, token, designator, parseExpr());
 		} else if (sym == LEFT_PAREN) {
-			parseActPars();
+			statement = parseActPars(designator);
 		} else {
-			error("Invalid assignment or call");
+			error(Diagnostics.Code.INVALID_ASSIGNMENT_OR_CALL);
 		}
 
 		check(SEMICOLON);
+		return statement;
 	}
 
 	/**
 	 * Parses an IfStatement.
 	 * 
 	 * IfStatement = "if" "(" Condition ")" Statement ["else" Statement]
+	 *
+	 * @return the IF node
 	 */
-	private void parseIfStatement() {
+	private int parseIfStatement() {
+		int statement = tree.add(NodeKind.IF, stream.index());
 		check(IF);
 		check(LEFT_PAREN);
-		parseCondition();
+		int last = tree.append(statement, NONE, parseCondition());
 		check(RIGHT_PAREN);
-		parseStatement();
+		last = tree.append(statement, last, parseStatement());
 
 		if (sym == ELSE) {
 			check(ELSE);
-			parseStatement();
+			tree.append(statement, last, parseStatement());
 		}
+
+		return statement;
 	}
 
 	/**
 	 * Parses a WhileStatement.
 	 * 
 	 * WhileStatement = "while" "(" Condition ")" Statement
+	 *
+	 * @return the WHILE node
 	 */
-	private void parseWhileStatement() {
+	private int parseWhileStatement() {
+		int statement = tree.add(NodeKind.WHILE, stream.index());
 		check(WHILE);
 		check(LEFT_PAREN);
-		parseCondition();
+		int last = tree.append(statement, NONE, parseCondition());
 		check(RIGHT_PAREN);
-		parseStatement();
+		tree.append(statement, last, parseStatement());
+		return statement;
 	}
 
 	/**
 	 * Parses a ReturnStatement.
 	 * 
 	 * ReturnStatement = "return" [Expr] ";"
+	 *
+	 * @return the RETURN node
 	 */
-	private void parseReturnStatement() {
+	private int parseReturnStatement() {
+		int statement = tree.add(NodeKind.RETURN, stream.index());
 		check(RETURN);
 
-		if (EXPR_STARTERS.contains(sym)) {
-			parseExpr();
+		if (at(EXPR_STARTERS)) {
+			tree.append(statement, NONE, parseExpr());
 		}
 
 		check(SEMICOLON);
+		return statement;
 	}
 
 	/**
 	 * Parses a ReadStatement.
 	 * 
 	 * ReadStatement = "read" "(" Designator ")" ";"
+	 *
+	 * @return the READ node
 	 */
-	private void parseReadStatement() {
+	private int parseReadStatement() {
+		int statement = tree.add(NodeKind.READ, stream.index());
 		check(READ);
 		check(LEFT_PAREN);
-		parseDesignator();
+		tree.append(statement, NONE, parseDesignator());
 		check(RIGHT_PAREN);
 		check(SEMICOLON);
+		return statement;
 	}
 
 	/**
 	 * Parses a PrintStatement.
 	 * 
 	 * PrintStatement = "print" "(" Expr ["," number] ")" ";"
+	 *
+	 * @return the PRINT node
 	 */
-	private void parsePrintStatement() {
+	private int parsePrintStatement() {
+		int statement = tree.add(NodeKind.PRINT, stream.index());
 		check(PRINT);
 		check(LEFT_PAREN);
-		parseExpr();
+		int last = tree.append(statement, NONE, parseExpr());
 
 		if (sym == COMMA) {
 			check(COMMA);
-			check(NUMBER);
+
+			if (sym == NUMBER) {
+				tree.append(statement, last, leaf(NodeKind.NUMBER));
+			} else {
+				check(NUMBER);
+			}
 		}
 
 		check(RIGHT_PAREN);
 		check(SEMICOLON);
+		return statement;
 	}
 
 	/**
 	 * Parses a Condition.
 	 * 
 	 * Condition = Expr Relop Expr
+	 *
+	 * @return the CONDITION node
 	 */
-	private void parseCondition() {
-		parseExpr();
+	private int parseCondition() {
+		int left = parseExpr();
+		int token = stream.index();
 
-		if (RELATIONAL_OPERATORS.contains(sym)) {
+		if (at(RELATIONAL_OPERATORS)) {
 			scan();
 		} else {
-			error("Relational operator expected");
+			error(Diagnostics.Code.RELATIONAL_OPERATOR_EXPECTED);
 		}
 
-		parseExpr();
+		return tree.add(NodeKind.CONDITION, token, left, parseExpr());
 	}
 
 	/**
-	 * Parses an Expr.
+	 * Parses an Expr, with the Terms, Factors and Designators inside it.
 	 * 
 	 * Expr = ["-"] Term {Addop Term}
-	 */
-	private void parseExpr() {
-		if (!EXPR_STARTERS.contains(sym)) {
-			error("Invalid expression");
-			return;
-		}
-
-		if (sym == MINUS) {
-			check(MINUS);
-		}
-
-		parseTerm();
-
-		if (ADDITION_OPERATOR.contains(sym)) {
-			scan();
-			parseTerm();
-		}
-	}
-
-	/**
-	 * Parses a Term.
-	 * 
 	 * Term = Factor {Mulop Factor}
+	 * Factor = Designator [ActPars]
+	 *        | number
+	 *        | charConst
+	 *        | "new" ident ["[" Expr "]"]
+	 *        | "(" Expr ")"
+	 * Designator = ident {"." ident | "[" Expr "]"}
+	 *
+	 * The expression is parsed by precedence climbing, without recursion:
+	 * the operators waiting for their right operand and the Exprs nested
+	 * in a Factor are kept on an explicit stack of frames, and the
+	 * operands on a stack of nodes. Each token is read once and each
+	 * frame is pushed and popped once, so the time is linear and the Java
+	 * stack stays the same however long or deep the expression is.
+	 *
+	 * @return the node of the expression, or NONE if there's none
 	 */
-	private void parseTerm() {
-		parseFactor();
+	private int parseExpr() {
+		pushFrame(FRAME_EXPR, 0, NONE);
+		int state = STATE_EXPR;
 
-		if (MULTIPLICATION_OPERATOR.contains(sym)) {
-			scan();
-			parseFactor();
+		while (true) {
+			switch (state) {
+				case STATE_EXPR:
+					if (!at(EXPR_STARTERS)) {
+						error(Diagnostics.Code.INVALID_EXPRESSION);
+						pushOperand(NONE);
+						state = STATE_END;
+					} else {
+						if (sym == MINUS) {
+							pushFrame(FRAME_NEGATE, stream.index(), NONE);
+							scan();
+						}
+
+						state = STATE_FACTOR;
+					}
+					break;
+
+				case STATE_FACTOR:
+					state = parseFactor();
+					break;
+
+				case STATE_DESIGNATOR:
+					state = parseSelector();
+					break;
+
+				case STATE_OPERATOR:
+					if (at(MULTIPLICATION_OPERATOR)) {
+						reduce(FRAME_MULTIPLY);
+						pushFrame(FRAME_MULTIPLY, stream.index(), NONE);
+						scan();
+						state = STATE_FACTOR;
+					} else if (at(ADDITION_OPERATOR)) {
+						reduce(FRAME_ADD);
+						pushFrame(FRAME_ADD, stream.index(), NONE);
+						scan();
+						state = STATE_FACTOR;
+					} else {
+						reduce(FRAME_ADD);
+						state = STATE_END;
+					}
+					break;
+
+				default:
+					// The Expr on top of the operands is complete.
+					int frame = frames - 1;
+					int token = frameTokens[frame];
+
+					switch (frameKinds[frame]) {
+						case FRAME_EXPR:
+							frames--;
+							return popOperand();
+						case FRAME_GROUP:
+							frames--;
+							check(RIGHT_PAREN);
+							state = STATE_OPERATOR;
+							break;
+						case FRAME_INDEX:
+							frames--;
+							pushOperand(tree.add(NodeKind.INDEX, token, frameNodes[frame], popOperand()));
+							check(RIGHT_BRACKET);
+							state = STATE_DESIGNATOR;
+							break;
+						case FRAME_NEW_ARRAY:
+							frames--;
+							pushOperand(tree.add(NodeKind.NEW_ARRAY, token, frameNodes[frame], popOperand()));
+							check(RIGHT_BRACKET);
+							state = STATE_OPERATOR;
+							break;
+						default:
+							// The Expr is an argument of a call.
+							if (sym == COMMA) {
+								check(COMMA);
+								state = STATE_EXPR;
+							} else {
+								frames--;
+								pushOperand(call(token, frameNodes[frame]));
+								check(RIGHT_PAREN);
+								state = STATE_OPERATOR;
+							}
+					}
+			}
 		}
 	}
 
 	/**
-	 * Parses a Factor.
-	 * 
-	 * Factor = Designator [ActPars]
-	 *        | number
-   *        | charConst
-   *        | "new" ident ["[" Expr "]"]
-   *        | "(" Expr ")"
+	 * Parses the start of a Factor, up to its first nested Expr if it has
+	 * one.
+	 *
+	 * @return the next state of the expression
 	 */
-	private void parseFactor() {
+	private int parseFactor() {
 		if (sym == IDENTIFIER) {
-			parseDesignator();
-
-			if (sym == LEFT_PAREN) {
-				parseActPars();
-			}
+			pushOperand(leaf(NodeKind.NAME));
+			return STATE_DESIGNATOR;
 		} else if (sym == NUMBER) {
-			check(NUMBER);
+			pushOperand(leaf(NodeKind.NUMBER));
 		} else if (sym == CHARACTER) {
-			check(CHARACTER);
+			pushOperand(leaf(NodeKind.CHARACTER));
 		} else if (sym == NEW) {
+			int token = stream.index();
 			check(NEW);
-			check(IDENTIFIER);
+			int type = parseName();
 
 			if (sym == LEFT_BRACKET) {
 				check(LEFT_BRACKET);
-				parseExpr();
-				check(RIGHT_BRACKET);
+				pushFrame(FRAME_NEW_ARRAY, token, type);
+				return STATE_EXPR;
 			}
+
+			pushOperand(tree.add(NodeKind.NEW, token, type, NONE));
+		} else if (sym == LEFT_PAREN) {
+			check(LEFT_PAREN);
+			pushFrame(FRAME_GROUP, 0, NONE);
+			return STATE_EXPR;
+		} else {
+			error(Diagnostics.Code.INVALID_FACTOR);
+			pushOperand(NONE);
+		}
+
+		return STATE_OPERATOR;
+	}
+
+	/**
+	 * Parses the next selector of the Designator on top of the operands,
+	 * or the ActPars after it.
+	 *
+	 * @return the next state of the expression
+	 */
+	private int parseSelector() {
+		int token = stream.index();
+
+		if (sym == PERIOD) {
+			check(PERIOD);
+			int designator = popOperand();
+			pushOperand(tree.add(NodeKind.FIELD, token, designator, parseName()));
+			return STATE_DESIGNATOR;
+		} else if (sym == LEFT_BRACKET) {
+			check(LEFT_BRACKET);
+			pushFrame(FRAME_INDEX, token, popOperand());
+			return STATE_EXPR;
 		} else if (sym == LEFT_PAREN) {
 			check(LEFT_PAREN);
-			parseExpr();
+
+			if (at(EXPR_STARTERS)) {
+				// The designator stays on the operands, before the arguments.
+				pushFrame(FRAME_ARGUMENTS, token, operands - 1);
+				return STATE_EXPR;
+			}
+
+			pushOperand(call(token, operands - 1));
 			check(RIGHT_PAREN);
 		}
+
+		return STATE_OPERATOR;
+	}
+
+	/**
+	 * Applies the operators on top of the frames that bind at least as
+	 * tightly as a new operator, which makes them left associative.
+	 *
+	 * @param operator the frame kind of the new operator
+	 */
+	private void reduce(int operator) {
+		int precedence = precedence(operator);
+
+		while (precedence(frameKinds[frames - 1]) >= precedence) {
+			int frame = --frames;
+			int right = popOperand();
+
+			if (frameKinds[frame] == FRAME_NEGATE) {
+				pushOperand(tree.add(NodeKind.NEGATE, frameTokens[frame], right, NONE));
+			} else {
+				int left = popOperand();
+				pushOperand(tree.add(NodeKind.BINARY, frameTokens[frame], left, right));
+			}
+		}
+	}
+
+	/**
+	 * @param frame a frame kind
+	 * @return the precedence of the operator of the frame, or 0 if it
+	 *         isn't an operator
+	 */
+	private static int precedence(int frame) {
+		switch (frame) {
+			case FRAME_ADD:
+				return 1;
+			case FRAME_NEGATE:
+				// A leading "-" applies to the whole first Term.
+				return 2;
+			case FRAME_MULTIPLY:
+				return 3;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Creates a CALL node with the operands from the designator of the
+	 * method on, and removes them.
+	 *
+	 * @param token the index of the "(" token
+	 * @param designator the position of the designator in the operands
+	 * @return the CALL node
+	 */
+	private int call(int token, int designator) {
+		int call = tree.add(NodeKind.CALL, token);
+		int last = NONE;
+
+		for (int i = designator; i < operands; i++) {
+			last = tree.append(call, last, operandStack[i]);
+		}
+
+		operands = designator;
+		return call;
+	}
+
+	/**
+	 * Pushes a frame on the expression stack.
+	 *
+	 * @param kind the kind of the frame
+	 * @param token the index of the token of the frame
+	 * @param node the node of the frame
+	 */
+	private void pushFrame(int kind, int token, int node) {
+		if (frames == frameKinds.length) {
+			int capacity = frames * 2;
+			frameKinds = Arrays.copyOf(frameKinds, capacity);
+			frameTokens = Arrays.copyOf(frameTokens, capacity);
+			frameNodes = Arrays.copyOf(frameNodes, capacity);
+		}
+
+		frameKinds[frames] = kind;
+		frameTokens[frames] = token;
+		frameNodes[frames] = node;
+		frames++;
+	}
+
+	/**
+	 * @param node a node to push on the operands
+	 */
+	private void pushOperand(int node) {
+		if (operands == operandStack.length) {
+			operandStack = Arrays.copyOf(operandStack, operands * 2);
+		}
+
+		operandStack[operands++] = node;
+	}
+
+	/**
+	 * @return the node popped from the operands
+	 */
+	private int popOperand() {
+		return operandStack[--operands];
 	}
 
 	/**
 	 * Parses a Designator.
 	 * 
 	 * Designator = ident {"." ident | "[" Expr "]"}
+	 *
+	 * @return the node of the designator, or NONE if there's none
 	 */
-	private void parseDesignator() {
-		check(IDENTIFIER);
+	private int parseDesignator() {
+		int designator = parseName();
 
 		while (true) {
+			int token = stream.index();
+
 			if (sym == PERIOD) {
 				check(PERIOD);
-				check(IDENTIFIER);
+				designator = tree.add(NodeKind.FIELD, token, designator, parseName());
 			} else if (sym == LEFT_BRACKET) {
 				check(LEFT_BRACKET);
-				parseExpr();
+				designator = tree.add(NodeKind.INDEX, token, designator, parseExpr());
 				check(RIGHT_BRACKET);
 			} else {
 				break;
 			}
 		}
+
+		return designator;
 	}
 
 	/**
 	 * Parses an ActPars
 	 * 
 	 * ActPars = "(" [ Expr {"," Expr} ] ")"
+	 *
+	 * @param designator the node of the designator of the method
+	 * @return the CALL node
 	 */
-	private void parseActPars() {
+	private int parseActPars(int designator) {
+		int call = tree.add(NodeKind.CALL, stream.index(), designator, NONE);
+		int last = designator;
 		check(LEFT_PAREN);
 
-		if (EXPR_STARTERS.contains(sym)) {
-			parseExpr();
+		if (at(EXPR_STARTERS)) {
+			last = tree.append(call, last, parseExpr());
+
+			while (sym == COMMA) {
+				check(COMMA);
+				last = tree.append(call, last, parseExpr());
+			}
 		}
 
 		check(RIGHT_PAREN);
+		return call;
+	}
+
+	/**
+	 * Parses an identifier.
+	 *
+	 * @return the NAME node, or NONE if the look ahead token isn't an
+	 *         identifier
+	 */
+	private int parseName() {
+		if (sym == IDENTIFIER) {
+			return leaf(NodeKind.NAME);
+		}
+
+		check(IDENTIFIER);
+		return NONE;
+	}
+
+	/**
+	 * Adds a node for the look ahead token, and scans the next token.
+	 *
+	 * @param kind the kind of the node
+	 * @return the new node
+	 */
+	private int leaf(NodeKind kind) {
+		int node = tree.add(kind, stream.index());
+		scan();
+		return node;
 	}
 
 	public void parse() {
-		errors = 0; 
+		reset();
+
+		if (pool != null) {
+			stream.start(null);
+			scanner.tokenize(tokens);
+			parseParallel();
+		} else if (pipelined) {
+			parsePipelined();
+		} else {
+			stream.start(null);
+			scanner.tokenize(tokens);
+			parseTokens();
+		}
+	}
+
+	/**
+	 * Parses the tokens already in the buffer, without scanning them.
+	 */
+	void parseScanned() {
+		reset();
+		stream.rewind();
+		parseTokens();
+	}
+
+	/**
+	 * Parses again a part of a list of Statements of a Block, or of
+	 * MethodDecl of the Program, whose tokens changed. The new nodes
+	 * replace the old ones in the tree only if they span exactly the same
+	 * part of the list, without errors.
+	 *
+	 * @param parent the BLOCK or PROGRAM node of the list
+	 * @param previous the child before the part, or NONE if the part
+	 *        starts the list
+	 * @param next the child after the part, or NONE if the part ends the
+	 *        list
+	 * @param methods {@code true} for MethodDecl, or {@code false} for
+	 *        Statements
+	 * @param nesting the number of Statements around the part
+	 * @param start the index of the first token of the part
+	 * @param end the index of the token after the part
+	 * @return {@code true} if the part was replaced
+	 */
+	boolean reparse(int parent, int previous, int next, boolean methods, int nesting, int start, int end) {
+		Diagnostics saved = diagnostics;
+		// The errors are only counted.
+		diagnostics = new Diagnostics(scanner.lines());
+		diagnostics.setMaxErrors(0);
+		int before = errors;
 		errDist = 3;
+		this.nesting = nesting;
+		stream.reset(start - 1);
+		scan();
+
+		int first = NONE;
+		int last = NONE;
 
+		while (stream.index() < end && (methods ? (sym == IDENTIFIER || sym == VOID) : (sym != RIGHT_BRACE && sym != EOF))) {
+			int node = methods ? parseMethodDecl() : parseStatement();
+			// A statement with errors may have no node. The attempt fails
+			// then, so the live children of the parent are not changed.
+			if (node == NONE) continue;
+
+			if (first == NONE) {
+				first = node;
+			} else {
+				tree.link(parent, last, node);
+			}
+			last = node;
+		}
+
+		boolean replaced = stream.index() == end && errors == before;
+		diagnostics = saved;
+		errors = before;
+		this.nesting = 0;
+
+		if (replaced) {
+			if (first == NONE) {
+				tree.link(parent, previous, next);
+			} else {
+				tree.link(parent, previous, first);
+				tree.link(parent, last, next);
+			}
+		}
+
+		return replaced;
+	}
+
+	/**
+	 * Forgets the last source parsed.
+	 */
+	private void reset() {
+		errors = 0;
+		errDist = 3;
+		nesting = 0;
+
+		sym = null;
+		tree.clear();
+		frames = 0;
+		operands = 0;
+	}
+
+	/**
+	 * Parses the tokens with the method declarations parsed on the pool,
+	 * then reports the errors of all the parts in source order. If a
+	 * method declaration does not end where its braces do, parses the
+	 * tokens again in order.
+	 */
+	private void parseParallel() {
+		Diagnostics outside = new Diagnostics(scanner.lines());
+		diagnostics = outside;
+		batches = new ArrayList<>();
+		boolean split = true;
+
+		try {
+			parseTokens();
+		} finally {
+			for (MethodBatch batch : batches) {
+				if (batch.task != null) batch.task.join();
+				split &= batch.split;
+			}
+			diagnostics = scanner.diagnostics();
+		}
+
+		List<MethodBatch> parsed = batches;
+		batches = null;
+
+		if (split) {
+			// The errors of each batch are in order, and so are the batches.
+			Diagnostics methods = new Diagnostics(scanner.lines());
+			for (MethodBatch batch : parsed) {
+				methods.addAll(batch.parser.diagnostics, -1);
+			}
+
+			diagnostics.addMerged(outside, methods);
+		} else {
+			errors = 0;
+			errDist = 3;
+			tree.clear();
+			stream.rewind();
+			parseTokens();
+		}
+	}
+
+	/**
+	 * Parses the tokens while another thread scans them. The scanner
+	 * finishes the source even if the parser stops before its end, and the
+	 * errors of the parser are reported after the ones of the scanner, as
+	 * when the tokens are all scanned first.
+	 */
+	private void parsePipelined() {
+		TokenRing ring = new TokenRing(16);
+		stream.start(ring);
+		Thread producer = new Thread(() -> scanner.tokenize(ring), "microjava-scanner");
+		producer.setDaemon(true);
+		producer.start();
+
+		Diagnostics lexical = diagnostics;
+		Diagnostics syntax = new Diagnostics(scanner.lines());
+		diagnostics = syntax;
+
+		try {
+			parseTokens();
+			// The scanner reports the errors of the tokens after the program.
+			stream.drain();
+		} finally {
+			ring.close();
+			stream.detach();
+			diagnostics = lexical;
+		}
+
+		try {
+			producer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		diagnostics.addAll(syntax);
+	}
+
+	/**
+	 * Parses the program from the first token.
+	 */
+	private void parseTokens() {
 		scan();
-		parseProgram();
+		tree.setRoot(parseProgram());
 
 		if (sym != EOF) {
-			error("end of file found before end of program");
+			error(Diagnostics.Code.END_OF_PROGRAM);
 		}
 	}
 
+	/**
+	 * Method declarations parsed together on the pool, by a parser of
+	 * their own over the same tokens.
+	 */
+	private class MethodBatch {
+		/**
+		 * Index of the first token of each declaration.
+		 */
+		private int[] starts = new int[16];
+		/**
+		 * Index of the closing brace of each declaration.
+		 */
+		private int[] ends = new int[16];
+		/**
+		 * METHOD_DECL node of each declaration, in the tree of the parser.
+		 */
+		private int[] roots;
+		/**
+		 * Number of declarations.
+		 */
+		private int methods;
+		/**
+		 * Number of tokens of the declarations.
+		 */
+		private int size;
+		/**
+		 * Parser of the declarations.
+		 */
+		private Parser parser;
+		/**
+		 * Index of the token of the first error of each declaration, or -1
+		 * if it has none.
+		 */
+		private int[] firstErrors;
+		/**
+		 * Number of errors reported before each declaration, which is the
+		 * index of its first error in the diagnostics of the parser.
+		 */
+		private int[] reported;
+		/**
+		 * Tokens recognized since last error, after each declaration.
+		 */
+		private int[] distances;
+		/**
+		 * If each declaration ended with its closing brace.
+		 */
+		private boolean split = true;
+		/**
+		 * Task parsing the declarations, once given to the pool.
+		 */
+		private ForkJoinTask<?> task;
+
+		/**
+		 * Adds a declaration.
+		 *
+		 * @param start the index of its first token
+		 * @param end the index of its closing brace
+		 */
+		void add(int start, int end) {
+			if (methods == starts.length) {
+				starts = Arrays.copyOf(starts, methods * 2);
+				ends = Arrays.copyOf(ends, methods * 2);
+			}
+
+			starts[methods] = start;
+			ends[methods] = end;
+			methods++;
+			size += end - start + 1;
+		}
+
+		/**
+		 * Gives the declarations to the pool.
+		 */
+		void fork() {
+			task = pool.submit(this::parse);
+		}
+
+		/**
+		 * Parses each declaration from its first token, as if it followed
+		 * tokens without errors.
+		 */
+		private void parse() {
+			parser = new Parser(scanner, tokens);
+			parser.lazy = lazy;
+			parser.diagnostics = new Diagnostics(scanner.lines());
+			roots = new int[methods];
+			firstErrors = new int[methods];
+			reported = new int[methods];
+			distances = new int[methods];
+
+			for (int i = 0; i < methods; i++) {
+				parser.stream.reset(starts[i] - 1);
+				parser.errDist = 3;
+				parser.firstError = -1;
+				reported[i] = parser.diagnostics.count();
+				parser.scan();
+				roots[i] = parser.parseMethodDecl();
+				firstErrors[i] = parser.firstError;
+				distances[i] = parser.errDist;
+				split &= parser.stream.index() == ends[i] + 1;
+			}
+		}
+
+		/**
+		 * Makes the errors of the declarations the ones found when parsing
+		 * in order. Each declaration was parsed as if it followed tokens
+		 * without errors, which only changes if its first error is
+		 * reported: it is not if it comes too soon after the last error
+		 * before the declaration.
+		 *
+		 * @param distance the tokens recognized since last error, after
+		 *        the first token of the first declaration
+		 * @return the tokens recognized since last error, after the token
+		 *         following the last declaration
+		 */
+		int join(int distance) {
+			int removed = 0;
+
+			for (int i = 0; i < methods; i++) {
+				if (firstErrors[i] < 0) {
+					// The parser started at 3, after the first token.
+					distance += distances[i] - 4;
+					continue;
+				}
+
+				if (distance + firstErrors[i] - starts[i] < 3) {
+					parser.diagnostics.remove(reported[i] - removed);
+					parser.errors--;
+					removed++;
+				}
+				distance = distances[i];
+			}
+
+			return distance;
+		}
+	}
 }
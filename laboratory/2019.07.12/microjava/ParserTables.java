@@ -0,0 +1,381 @@
+package microjava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Productions and LL(1) parse table of the table driven parser.
+ *
+ * The table is generated from the EBNF rules of {@link Grammar#MICROJAVA}.
+ * The rules are first turned into plain productions: each option,
+ * repetition and group of alternatives inside a rule gets a nonterminal of
+ * its own, with an empty production for options and repetitions. Then
+ * each production is entered in the table for the tokens that predict it,
+ * which are the ones that start it, and the ones that follow its
+ * nonterminal if it can derive nothing.
+ *
+ * Symbols are ints: a token is its ordinal, and a nonterminal is the
+ * number of token types plus its index. The only conflict of the grammar
+ * is the "else" of an IfStatement, which is given to the IfStatement
+ * nearest to it, as the recursive descent parser does.
+ */
+final class ParserTables {
+	/**
+	 * Number of token types, which is the first nonterminal symbol.
+	 */
+	static final int TOKENS = TokenType.values().length;
+	/**
+	 * Start symbol.
+	 */
+	static final int START = TOKENS;
+
+	/**
+	 * Symbols of the right sides of the productions, one after the other.
+	 */
+	private static final int[] SYMBOLS;
+	/**
+	 * Position of the right side of each production in {@code SYMBOLS},
+	 * followed by the end of the last one.
+	 */
+	private static final int[] STARTS;
+	/**
+	 * Production of each nonterminal and token, or -1 if there's none.
+	 */
+	private static final int[] TABLE;
+	/**
+	 * Name of each nonterminal.
+	 */
+	private static final String[] NAMES;
+
+	static {
+		Builder builder = new Builder(Grammar.MICROJAVA);
+		builder.build();
+
+		int count = builder.right.size();
+		STARTS = new int[count + 1];
+		for (int p = 0; p < count; p++) {
+			STARTS[p + 1] = STARTS[p] + builder.right.get(p).length;
+		}
+
+		SYMBOLS = new int[STARTS[count]];
+		for (int p = 0; p < count; p++) {
+			int[] right = builder.right.get(p);
+			System.arraycopy(right, 0, SYMBOLS, STARTS[p], right.length);
+		}
+
+		TABLE = builder.table();
+		NAMES = builder.names.toArray(new String[0]);
+	}
+
+	private ParserTables() {
+	}
+
+	/**
+	 * @param nonterminal a nonterminal symbol
+	 * @param token the ordinal of the lookahead token
+	 * @return the production to expand the nonterminal with, or -1 if the
+	 *         token cannot come there
+	 */
+	static int production(int nonterminal, int token) {
+		return TABLE[(nonterminal - TOKENS) * TOKENS + token];
+	}
+
+	/**
+	 * @param production a production
+	 * @return the position of its first symbol in {@link #symbol(int)}
+	 */
+	static int start(int production) {
+		return STARTS[production];
+	}
+
+	/**
+	 * @param production a production
+	 * @return the position after its last symbol in {@link #symbol(int)}
+	 */
+	static int end(int production) {
+		return STARTS[production + 1];
+	}
+
+	/**
+	 * @param position a position in the right sides of the productions
+	 * @return the symbol at that position
+	 */
+	static int symbol(int position) {
+		return SYMBOLS[position];
+	}
+
+	/**
+	 * @param nonterminal a nonterminal symbol
+	 * @return the name of the nonterminal, as a rule name or as the rule
+	 *         name followed by a number for the parts of a rule
+	 */
+	static String name(int nonterminal) {
+		return NAMES[nonterminal - TOKENS];
+	}
+
+	/**
+	 * Builder of the productions and of the table.
+	 */
+	private static class Builder {
+		/**
+		 * Grammar the productions come from.
+		 */
+		final Grammar grammar;
+		/**
+		 * Name of each nonterminal.
+		 */
+		final List<String> names = new ArrayList<>();
+		/**
+		 * Nonterminal of each production, as an index.
+		 */
+		final List<Integer> left = new ArrayList<>();
+		/**
+		 * Symbols of the right side of each production.
+		 */
+		final List<int[]> right = new ArrayList<>();
+		/**
+		 * Number of parts already given a nonterminal, for each rule.
+		 */
+		int[] parts;
+
+		Builder(Grammar grammar) {
+			this.grammar = grammar;
+		}
+
+		/**
+		 * Adds the productions of every rule. The nonterminals of the rules
+		 * come first, in the order of the grammar.
+		 */
+		void build() {
+			parts = new int[grammar.size()];
+			for (int i = 0; i < grammar.size(); i++) {
+				names.add(grammar.name(i));
+			}
+
+			for (int i = 0; i < grammar.size(); i++) {
+				alternatives(i, grammar.rule(i), null, i);
+			}
+		}
+
+		/**
+		 * Adds a production for each alternative of a part of a rule.
+		 *
+		 * @param nonterminal the index of the nonterminal of the productions
+		 * @param node the part of the rule
+		 * @param suffix the symbols added at the end of each production,
+		 *        or {@code null}
+		 * @param rule the index of the rule
+		 */
+		void alternatives(int nonterminal, Grammar.Node node, int[] suffix, int rule) {
+			Grammar.Node[] alternatives = (node.kind == Grammar.Kind.ALTERNATIVE)
+				? node.children : new Grammar.Node[] { node };
+
+			for (Grammar.Node alternative : alternatives) {
+				List<Integer> symbols = new ArrayList<>();
+				symbols(alternative, symbols, rule);
+
+				if (suffix != null) {
+					for (int symbol : suffix) {
+						symbols.add(symbol);
+					}
+				}
+
+				add(nonterminal, symbols);
+			}
+		}
+
+		/**
+		 * Adds the symbols of a part of a rule to a right side, with a new
+		 * nonterminal for each option, repetition or group of alternatives.
+		 *
+		 * @param node the part of the rule
+		 * @param symbols the symbols of the right side
+		 * @param rule the index of the rule
+		 */
+		void symbols(Grammar.Node node, List<Integer> symbols, int rule) {
+			switch (node.kind) {
+				case TERMINAL:
+					symbols.add(node.symbol);
+					break;
+				case NONTERMINAL:
+					symbols.add(TOKENS + node.symbol);
+					break;
+				case SEQUENCE:
+					for (Grammar.Node child : node.children) {
+						symbols(child, symbols, rule);
+					}
+					break;
+				default:
+					int part = names.size();
+					names.add(grammar.name(rule) + "." + (++parts[rule]));
+					symbols.add(TOKENS + part);
+
+					if (node.kind == Grammar.Kind.ALTERNATIVE) {
+						alternatives(part, node, null, rule);
+					} else {
+						// Option: child | empty. Repetition: child itself | empty.
+						int[] suffix = (node.kind == Grammar.Kind.REPETITION) ? new int[] { TOKENS + part } : null;
+						alternatives(part, node.children[0], suffix, rule);
+						add(part, new ArrayList<>());
+					}
+			}
+		}
+
+		/**
+		 * Adds a production.
+		 *
+		 * @param nonterminal the index of its nonterminal
+		 * @param symbols the symbols of its right side
+		 */
+		void add(int nonterminal, List<Integer> symbols) {
+			int[] symbolArray = new int[symbols.size()];
+			for (int i = 0; i < symbolArray.length; i++) {
+				symbolArray[i] = symbols.get(i);
+			}
+
+			left.add(nonterminal);
+			right.add(symbolArray);
+		}
+
+		/**
+		 * Computes the FIRST and FOLLOW sets of the productions, and builds
+		 * the table from them.
+		 *
+		 * @return the table, by nonterminal index and token ordinal
+		 * @throws IllegalStateException if the grammar is not LL(1), other
+		 *         than for the "else" of an IfStatement
+		 */
+		int[] table() {
+			int nonterminals = names.size();
+			boolean[] nullable = new boolean[nonterminals];
+			long[] first = new long[nonterminals];
+			long[] follow = new long[nonterminals];
+			follow[0] = Grammar.setOf(TokenType.EOF);
+
+			// FIRST, then FOLLOW, until no set changes.
+			for (boolean changed = true; changed; ) {
+				changed = false;
+
+				for (int p = 0; p < right.size(); p++) {
+					int a = left.get(p);
+					int[] symbols = right.get(p);
+
+					if (!nullable[a] && nullable(symbols, 0, nullable)) {
+						nullable[a] = true;
+						changed = true;
+					}
+
+					long set = first[a] | first(symbols, 0, nullable, first);
+					if (set != first[a]) {
+						first[a] = set;
+						changed = true;
+					}
+				}
+			}
+
+			for (boolean changed = true; changed; ) {
+				changed = false;
+
+				for (int p = 0; p < right.size(); p++) {
+					int[] symbols = right.get(p);
+
+					for (int i = 0; i < symbols.length; i++) {
+						if (symbols[i] < TOKENS) continue;
+
+						int b = symbols[i] - TOKENS;
+						long set = follow[b] | first(symbols, i + 1, nullable, first);
+						if (nullable(symbols, i + 1, nullable)) {
+							set |= follow[left.get(p)];
+						}
+
+						if (set != follow[b]) {
+							follow[b] = set;
+							changed = true;
+						}
+					}
+				}
+			}
+
+			int[] table = new int[nonterminals * TOKENS];
+			Arrays.fill(table, -1);
+
+			for (int p = 0; p < right.size(); p++) {
+				int a = left.get(p);
+				int[] symbols = right.get(p);
+				long predict = first(symbols, 0, nullable, first);
+				if (nullable(symbols, 0, nullable)) {
+					predict |= follow[a];
+				}
+
+				for (int token = 0; token < TOKENS; token++) {
+					if ((predict & (1L << token)) == 0) continue;
+
+					int entry = a * TOKENS + token;
+					int other = table[entry];
+
+					if (other < 0) {
+						table[entry] = p;
+					} else if (isDanglingElse(a, token)) {
+						// The "else" goes to the nearest IfStatement.
+						if (symbols.length != 0) {
+							table[entry] = p;
+						}
+					} else {
+						throw new IllegalStateException("LL(1) conflict in " + names.get(a) + " on " + TokenType.values()[token]);
+					}
+				}
+			}
+
+			return table;
+		}
+
+		/**
+		 * @param nonterminal the index of a nonterminal
+		 * @param token the ordinal of a token
+		 * @return {@code true} if the nonterminal is the option of an
+		 *         IfStatement, and the token its "else"
+		 */
+		boolean isDanglingElse(int nonterminal, int token) {
+			return token == TokenType.ELSE.ordinal() && names.get(nonterminal).startsWith("IfStatement.");
+		}
+
+		/**
+		 * @param symbols the symbols of a right side
+		 * @param from the position of the first symbol considered
+		 * @param nullable if each nonterminal can derive nothing
+		 * @return {@code true} if the symbols from the position on can
+		 *         derive nothing
+		 */
+		static boolean nullable(int[] symbols, int from, boolean[] nullable) {
+			for (int i = from; i < symbols.length; i++) {
+				if (symbols[i] < TOKENS || !nullable[symbols[i] - TOKENS]) return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * @param symbols the symbols of a right side
+		 * @param from the position of the first symbol considered
+		 * @param nullable if each nonterminal can derive nothing
+		 * @param first the FIRST set of each nonterminal
+		 * @return the set of the tokens that can start the symbols from the
+		 *         position on
+		 */
+		static long first(int[] symbols, int from, boolean[] nullable, long[] first) {
+			long set = 0;
+
+			for (int i = from; i < symbols.length; i++) {
+				if (symbols[i] < TOKENS) {
+					return set | (1L << symbols[i]);
+				}
+
+				set |= first[symbols[i] - TOKENS];
+				if (!nullable[symbols[i] - TOKENS]) break;
+			}
+
+			return set;
+		}
+	}
+}
@@ -1,100 +1,235 @@
 package microjava;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import static microjava.TokenType.*;
 
 /**
  * Scanner is responsible for creating the tokens from the source file.
+ * All the scanning state belongs to the instance, so different scanners
+ * can be used by different threads at the same time.
+ *
+ * A subclass can read the source from another buffer than {@code buf},
+ * by reading the characters in {@link #nextCharacter()}, the skip methods
+ * and {@link #lexeme()}. The tokens are found by the same rules.
  */
 public class Scanner {
 	/**
 	 * End of file character.
 	 */
-	private static final char EOF_CH = '\u0080';
+	static final char EOF_CH = '\u0080';
 	/**
 	 * End of line character.
 	 */
 	private static final char EOL = '\n';
 
+	/**
+	 * A word with 1 in each of its four characters.
+	 */
+	private static final long ONES = 0x0001000100010001L;
+	/**
+	 * A word with the high bit of each of its four characters set.
+	 */
+	private static final long HIGH_BITS = 0x8000800080008000L;
+	/**
+	 * A word with an end of line in each of its four characters.
+	 */
+	private static final long EOLS = ONES * EOL;
+	/**
+	 * A word with the bits of each of its four characters that are only
+	 * set in characters from EOF on.
+	 */
+	private static final long NOT_ASCII = ONES * 0xFF80;
+
   /**
 	 * Lookahead character.
 	 */
-	private static char ch;
+	char ch;
   /**
-	 * Current column.
+	 * Current position from start of source file.
 	 */
-	public  static int col;
+	int pos;
   /**
-	 * Current line.
+	 * Source file contents, or {@code null} if a subclass reads them
+	 * from another buffer.
 	 */
-	public  static int line;
+	final char[] buf;
   /**
-	 * Current position from start of source file.
+	 * Number of valid characters in {@code buf}, or of the units of the
+	 * buffer of a subclass.
 	 */
-	private static int pos;
-  /** 
-	 * Source file reader.
+	final int limit;
+  /**
+	 * Position of the current lexeme in the source.
+	 * For character constants it is the text between the quotes, and for
+	 * other tokens it is the whole token.
 	 */
-	private static Reader in;
+	int lexStart;
   /**
-	 * Current lexeme (token string).
+	 * Length of the current lexeme.
+	 */
+	int lexLength;
+  /**
+	 * Position where the current token starts.
+	 */
+	int tokenStart;
+  /**
+	 * Integer value of the current token.
+	 * For numbers it is the number itself, and for characters it is the
+	 * character code, or -1 if the character constant is malformed.
+	 */
+	int intValue;
+  /**
+	 * Names of the identifiers found in the source.
+	 */
+	private final NameTable names;
+  /**
+	 * Errors found in the source.
+	 */
+	private final Diagnostics diagnostics;
+  /**
+	 * Lines of the source, found when first asked for.
+	 */
+	private final LineIndex lines;
+  /**
+	 * Where the comments are recorded, or {@code null} if they are not.
+	 */
+	TriviaBuffer trivia;
+
+	/**
+	 * Creates a Scanner.
+	 * @param reader the input source
 	 */
-	private static char[] lex;
+	public Scanner(Reader reader) {
+		this(readAll(reader));
+	}
 
 	/**
-	 * Table of keywords and associated type.
+	 * Creates a Scanner that reads the source file through a memory map.
+	 * The file is decoded as UTF-8 once, and scanned from the decoded buffer.
+	 *
+	 * @param path the source file
+	 * @throws IOException if the file cannot be opened or mapped
 	 */
-	private static final Map<String, TokenType> KEYWORDS;
+	public Scanner(Path path) throws IOException {
+		this(decode(path));
+	}
 
-	static {
-		KEYWORDS = new HashMap<>();
-		KEYWORDS.put("class", CLASS);
-		KEYWORDS.put("else", ELSE);
-		KEYWORDS.put("final", FINAL);
-		KEYWORDS.put("if", IF);
-		KEYWORDS.put("new", NEW);
-		KEYWORDS.put("print", PRINT);
-		KEYWORDS.put("program", PROGRAM);
-		KEYWORDS.put("read", READ);
-		KEYWORDS.put("return", RETURN);
-		KEYWORDS.put("void", VOID);
-		KEYWORDS.put("while", WHILE);
+	/**
+	 * Creates a Scanner over an in-memory source.
+	 *
+	 * @param source the source characters, from the start of its array
+	 */
+	private Scanner(CharBuffer source) {
+		this(source.array(), source.limit(), new NameTable());
 	}
 
 	/**
-	 * Creates a Scanner.
-	 * @param reader the input source
+	 * Creates a Scanner over an in-memory source.
+	 *
+	 * @param buf the source characters
+	 * @param limit the number of characters in {@code buf}
+	 * @param names the table where the identifiers are added
 	 */
-	public Scanner(Reader reader) {
-		in = new BufferedReader(reader);
-		lex = new char[64];
-		line = 1;
-		col = 0;
+	Scanner(char[] buf, int limit, NameTable names) {
+		this.buf = buf;
+		this.limit = limit;
+		this.names = names;
+		lines = new LineIndex(buf, limit);
+		diagnostics = new Diagnostics(lines);
 		nextCharacter();
 	}
 
 	/**
-	 * Try to advance one character in the source file.
-	 * If has errors, the next character becomes EOF.
+	 * Creates a Scanner over a source that a subclass reads from another
+	 * buffer. The subclass reads the first character once it is ready.
+	 *
+	 * @param lines the lines of the source
+	 * @param limit the number of units in the buffer of the subclass
 	 */
-	private void nextCharacter() {
+	Scanner(LineIndex lines, int limit) {
+		this.buf = null;
+		this.limit = limit;
+		this.names = new NameTable();
+		this.lines = lines;
+		diagnostics = new Diagnostics(lines);
+	}
+
+	/**
+	 * Reads all characters of {@code reader} in bulk.
+	 * If has errors, the source ends at the last character read.
+	 *
+	 * @param reader the input source
+	 * @return the characters read
+	 */
+	private static CharBuffer readAll(Reader reader) {
+		char[] chars = new char[8192];
+		int length = 0;
+
 		try {
-			ch = (char) in.read(); 
-			col++; 
-			pos++;
-
-			if (ch == EOL) {
-				line++; 
-				col = 0;
-			} else if (ch == '\uffff') {
-				ch = EOF_CH;
+			int n;
+			while ((n = reader.read(chars, length, chars.length - length)) != -1) {
+				length += n;
+				if (length == chars.length) {
+					chars = Arrays.copyOf(chars, chars.length * 2);
+				}
 			}
 		} catch (IOException e) {
+			// The characters read so far are scanned, then EOF follows.
+		}
+
+		return CharBuffer.wrap(chars, 0, length);
+	}
+
+	/**
+	 * Maps a source file into memory and decodes it.
+	 *
+	 * @param path the source file
+	 * @return the decoded characters
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	private static CharBuffer decode(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+
+			if (!chars.hasArray()) {
+				chars = CharBuffer.wrap(chars.toString().toCharArray());
+			}
+
+			return chars;
+		}
+	}
+
+	/**
+	 * Moves the scanner to where it was right after scanning a token.
+	 *
+	 * @param position the end of the token
+	 */
+	void restart(int position) {
+		pos = position;
+		nextCharacter();
+	}
+
+	/**
+	 * Advances one character in the source buffer.
+	 * After the end of the buffer, the next character becomes EOF.
+	 * Only the position is kept: lines and columns are found from it
+	 * by {@link LineIndex} when needed.
+	 */
+	void nextCharacter() {
+		ch = (pos < limit) ? buf[pos] : EOF_CH;
+		pos++;
+
+		if (ch == '\uffff') {
 			ch = EOF_CH;
 		}
 	}
@@ -105,206 +240,473 @@ public class Scanner {
 	 * @return the next token
 	 */
 	public Token next() {
-		while (ch <= ' ') nextCharacter();
-
-		switch (ch) {
-			case ';':
-				nextCharacter();
-				return createToken(SEMICOLON);
-			case '.':
-				nextCharacter();
-				return createToken(PERIOD);
-			case EOF_CH:
-				return createToken(EOF);
-			case '+':
-				nextCharacter();
-				return createToken(PLUS);
-			case '-':
-			  nextCharacter();
-				return createToken(MINUS);
-			case '*':
-				nextCharacter();
-				return createToken(TIMES);
-			case '%':
-				nextCharacter();
-				return createToken(REM);
-			case ',':
-				nextCharacter();
-				return createToken(COMMA);
-			case '(':
-				nextCharacter();
-				return createToken(LEFT_PAREN);
-			case ')':
-				nextCharacter();
-				return createToken(RIGHT_PAREN);
-			case '[':
-				nextCharacter();
-				return createToken(LEFT_BRACKET);
-			case ']':
-				nextCharacter();
-				return createToken(RIGHT_BRACKET);
-			case '{':
-				nextCharacter();
-				return createToken(LEFT_BRACE);
-			case '}':
-				nextCharacter();
-				return createToken(RIGHT_BRACE);
-			case '=':
-				nextCharacter();
-				if (ch == '=') {
+		TokenType kind = scanToken();
+		return new Token(kind, value(kind), lines.source(), tokenStart, pos - 1 - tokenStart, lines);
+	}
+
+	/**
+	 * Returns a view of a part of the source, without copying it.
+	 * 
+	 * @param start the position of the part, such as the start of a token
+	 * @param length the length of the part
+	 * @return the characters of the part
+	 */
+	public CharSequence text(int start, int length) {
+		return CharBuffer.wrap(lines.source(), start, length);
+	}
+
+	/**
+	 * Returns the table with the names of the identifiers scanned so far.
+	 * The value of an identifier in a {@link TokenBuffer} is its id in
+	 * this table, so identifiers can be compared by their ids.
+	 * 
+	 * @return the name table
+	 */
+	public NameTable names() {
+		return names;
+	}
+
+	/**
+	 * Returns the lines of the source, which give the line and column of
+	 * a token from the position after it.
+	 *
+	 * @return the line index of the source
+	 */
+	public LineIndex lines() {
+		return lines;
+	}
+
+	/**
+	 * Sets where the comments skipped from now on are recorded, as ranges
+	 * of the source from the first slash to the end of line excluded.
+	 * Scanning costs nothing more while no buffer is set.
+	 *
+	 * @param trivia the buffer of the comments, or {@code null} to stop
+	 *        recording them
+	 */
+	public void setTrivia(TriviaBuffer trivia) {
+		this.trivia = trivia;
+	}
+
+	/**
+	 * Returns the errors found in the source. The parser reports its own
+	 * errors here too, so one report covers the whole source.
+	 *
+	 * @return the diagnostics of the source
+	 */
+	public Diagnostics diagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * Scans the remaining tokens of the source into a token buffer,
+	 * until the EOF token (included).
+	 * 
+	 * No object is created per token: identifiers are stored by their id
+	 * in the name table, and other values are stored as integers.
+	 * 
+	 * @param tokens the buffer where the tokens are appended
+	 * @return the number of tokens appended
+	 */
+	public int tokenize(TokenBuffer tokens) {
+		int count = 0;
+		TokenType kind;
+
+		do {
+			kind = scanInto(tokens);
+			count++;
+		} while (kind != EOF);
+
+		return count;
+	}
+
+	/**
+	 * Scans the remaining tokens of the source into a token ring, in
+	 * batches, until the EOF token (included) or until the ring is closed.
+	 * 
+	 * @param ring the ring where the tokens are published
+	 */
+	void tokenize(TokenRing ring) {
+		TokenBuffer batch = new TokenBuffer(TokenRing.BATCH);
+		TokenType kind;
+
+		try {
+			do {
+				batch.clear();
+
+				do {
+					kind = scanInto(batch);
+				} while (kind != EOF && batch.size() < TokenRing.BATCH);
+			} while (ring.publish(batch) && kind != EOF);
+		} finally {
+			ring.finish();
+		}
+	}
+
+	/**
+	 * Scans the next token in the source into a token buffer.
+	 * 
+	 * @param tokens the buffer where the token is appended
+	 * @return the type of the token
+	 */
+	TokenType scanInto(TokenBuffer tokens) {
+		TokenType kind = scanToken();
+		int value = (kind == IDENTIFIER) ? names.add(lexeme(), lexemeOffset(), lexLength) : intValue;
+		tokens.add(kind, tokenStart, pos - 1 - tokenStart, value);
+		return kind;
+	}
+
+	/**
+	 * Scans the next token in the source.
+	 * Its value is left in {@code intValue} and {@code lexStart}, and its
+	 * position in {@code tokenStart}.
+	 * 
+	 * @return the type of the token
+	 */
+	TokenType scanToken() {
+		while (true) {
+			if (ch <= ' ') skipWhitespace();
+
+			tokenStart = pos - 1;
+			intValue = 0;
+
+			switch (ch) {
+				case ';':
 					nextCharacter();
-					return createToken(EQUAL);
-				} else {
-					return createToken(ASSIGN);
-				}
-			case '!':
-				nextCharacter();
-				if (ch == '=') {
+					return SEMICOLON;
+				case '.':
 					nextCharacter();
-					return createToken(NOT_EQUAL);
-				} else {
-					return createToken(NONE);
-				}
-			case '<':
-				nextCharacter();
-				if (ch == '=') {
+					return PERIOD;
+				case EOF_CH:
+					return EOF;
+				case '+':
 					nextCharacter();
-					return createToken(LESS_EQUAL);
-				} else {
-					return createToken(LESS);
-				}
-			case '>':
-				nextCharacter();
-				if (ch == '=') {
+					return PLUS;
+				case '-':
+				  nextCharacter();
+					return MINUS;
+				case '*':
 					nextCharacter();
-					return createToken(GREATER_EQUAL);
-				} else {
-					return createToken(GREATER);
-				}
-			case '/':
-				nextCharacter();
-				if (ch == '/') {
-					do {
+					return TIMES;
+				case '%':
+					nextCharacter();
+					return REM;
+				case ',':
+					nextCharacter();
+					return COMMA;
+				case '(':
+					nextCharacter();
+					return LEFT_PAREN;
+				case ')':
+					nextCharacter();
+					return RIGHT_PAREN;
+				case '[':
+					nextCharacter();
+					return LEFT_BRACKET;
+				case ']':
+					nextCharacter();
+					return RIGHT_BRACKET;
+				case '{':
+					nextCharacter();
+					return LEFT_BRACE;
+				case '}':
+					nextCharacter();
+					return RIGHT_BRACE;
+				case '=':
+					nextCharacter();
+					if (ch == '=') {
 						nextCharacter();
-					} while (ch != '\n' && ch != EOF_CH);
-					return next();
-				} else {
-					return createToken(SLASH);
-				}
-			case '\'':
-				return readChar();
-			default:
-				if (isDigit(ch)) {
-					return readNumber();
-				} else if (isLetter(ch)) {
-					return readName();
-				}
+						return EQUAL;
+					} else {
+						return ASSIGN;
+					}
+				case '!':
+					nextCharacter();
+					if (ch == '=') {
+						nextCharacter();
+						return NOT_EQUAL;
+					} else {
+						return NONE;
+					}
+				case '<':
+					nextCharacter();
+					if (ch == '=') {
+						nextCharacter();
+						return LESS_EQUAL;
+					} else {
+						return LESS;
+					}
+				case '>':
+					nextCharacter();
+					if (ch == '=') {
+						nextCharacter();
+						return GREATER_EQUAL;
+					} else {
+						return GREATER;
+					}
+				case '/':
+					nextCharacter();
+					if (ch == '/') {
+						skipComment();
+						if (trivia != null) trivia.add(tokenStart, pos - 1 - tokenStart);
+						continue;
+					} else {
+						return SLASH;
+					}
+				case '\'':
+					return readChar();
+				default:
+					if (isDigit(ch)) {
+						return readNumber();
+					} else if (isLetter(ch)) {
+						return readName();
+					}
 
-				nextCharacter();
-				return createToken(NONE);
+					nextCharacter();
+					return NONE;
+			}
 		}
 	}
 
 	/**
-	 * Read a name, that can be an indentifier or a keyword.
+	 * Skips the whitespace from the lookahead character on.
+	 * The buffer is searched one character at a time, or eight at a time
+	 * when the whitespace goes on after the lookahead character. Most runs
+	 * of whitespace between tokens are a single space, for which reading
+	 * words would only be slower.
+	 */
+	void skipWhitespace() {
+		int i = pos;
+
+		if (i < limit && buf[i] <= ' ') {
+			while (i + 8 <= limit && !hasAboveSpace(word(i)) && !hasAboveSpace(word(i + 4))) {
+				i += 8;
+			}
+		}
+
+		while (i < limit && buf[i] <= ' ') {
+			i++;
+		}
+
+		skipTo(i);
+	}
+
+	/**
+	 * Skips a comment, until the end of line or file.
+	 * At the beginning ch holds the second slash.
+	 *
+	 * The buffer is searched eight characters at a time until an end of
+	 * line or a character that is not ASCII, then one at a time.
+	 */
+	void skipComment() {
+		int i = pos;
+
+		while (i + 8 <= limit && !hasEndOfLineOrNonAscii(word(i)) && !hasEndOfLineOrNonAscii(word(i + 4))) {
+			i += 8;
+		}
+
+		while (i < limit) {
+			char c = buf[i];
+			if (c == EOL || c == EOF_CH || c == '\uffff') break;
+			i++;
+		}
+
+		skipTo(i);
+	}
+
+	/**
+	 * Packs four characters of the buffer into a word, the first one in the
+	 * lowest bits, so they are tested together (SWAR, SIMD within a
+	 * register).
+	 *
+	 * @param index the position of the first character
+	 * @return the word
+	 */
+	private long word(int index) {
+		return buf[index] | (long) buf[index + 1] << 16 | (long) buf[index + 2] << 32 | (long) buf[index + 3] << 48;
+	}
+
+	/**
+	 * Checks if a character of a word is above a space. A character plus
+	 * 0x7FDF only reaches 0x8000 if it's above 0x20, and can only carry into
+	 * the next one if its own high bit is set.
+	 *
+	 * @param word four characters of the source
+	 * @return {@code true} if one of the characters is not whitespace
+	 */
+	private static boolean hasAboveSpace(long word) {
+		return ((word + ONES * (0x7FFF - ' ') | word) & HIGH_BITS) != 0;
+	}
+
+	/**
+	 * Checks if a character of a word is an end of line, or not ASCII. The
+	 * characters that are an end of line are 0 in {@code word ^ EOLS}, and
+	 * only a character that is 0 there gets its high bit set by subtracting
+	 * 1 without having it before, unless a lower one that is 0 borrowed
+	 * from it.
+	 *
+	 * @param word four characters of the source
+	 * @return {@code true} if one of the characters may end a comment
+	 */
+	private static boolean hasEndOfLineOrNonAscii(long word) {
+		long eols = word ^ EOLS;
+		return (eols - ONES & ~eols & HIGH_BITS | word & NOT_ASCII) != 0;
+	}
+
+	/**
+	 * Moves the lookahead character forward, after characters that were
+	 * already checked, as if {@link #nextCharacter()} read each of them.
 	 * 
-	 * @return the appropriate token
+	 * @param index the position of the new lookahead character
 	 */
-	private Token readName() {
-		// At the beginning ch holds the first letter of the name.
-		lex[0] = ch;
-		int i = 1;
+	private void skipTo(int index) {
+		pos = index;
 		nextCharacter();
-		// Reads further letters and digits
-		while (isDigitOrLetter(ch) && i < 64) {
-			lex[i++] = ch;
-			nextCharacter();
-		}
-		// Looks up the name in a keyword table.
-		String name = new String(lex, 0, i);
-		TokenType type = KEYWORDS.get(name);
-		if (type == null) type = IDENTIFIER;
+	}
 
-		return createToken(type, name);
+	/**
+	 * Read a name, that can be an indentifier or a keyword.
+	 * 
+	 * @return the appropriate token type
+	 */
+	private TokenType readName() {
+		// At the beginning ch holds the first letter of the name.
+		lexStart = pos - 1;
+		skipLettersAndDigits();
+		lexLength = pos - 1 - lexStart;
+		// Checks if the name is a keyword.
+		return keyword(lexeme(), lexemeOffset(), lexLength);
 	}
 
 	/**
 	 * Read a number.
 	 * 
-	 * @return the token of the number.
+	 * @return the token type of the number.
 	 */
-	private Token readNumber() {
+	private TokenType readNumber() {
 		// At the beginning ch holds the first digit of the number.
-		lex[0] = ch;
-		int i = 1;
+		lexStart = pos - 1;
+		skipDigits();
+		lexLength = pos - 1 - lexStart;
+		return number();
+	}
+
+	/**
+	 * Skips the letters and digits after the lookahead character, which
+	 * is a letter.
+	 */
+	void skipLettersAndDigits() {
 		nextCharacter();
-		// Reads further digits.
-		while (isDigit(ch) && i < 64) {
-			lex[i++] = ch;
+		while (isDigitOrLetter(ch)) {
 			nextCharacter();
 		}
+	}
+
+	/**
+	 * Skips the digits after the lookahead character, which is a digit.
+	 */
+	void skipDigits() {
+		nextCharacter();
+		while (isDigit(ch)) {
+			nextCharacter();
+		}
+	}
+
+	/**
+	 * Converts the digits in the lexeme into the value of a number.
+	 * The value is accumulated digit by digit, checking for overflow
+	 * before each step, so no string or exception is created.
+	 * 
+	 * @return the token type of the number.
+	 */
+	TokenType number() {
+		char[] digits = lexeme();
+		int offset = lexemeOffset();
+		int value = 0;
+
+		for (int i = offset; i < offset + lexLength; i++) {
+			int digit = digits[i] - '0';
 
-		String num = new String(lex, 0, i);
-		try {
-			// Converts them into a number.
-			int value = Integer.parseInt(num);
-			return createToken(NUMBER, value);
-		} catch (NumberFormatException e) {
 			// If overflow, report an error.
-			System.err.printf("ERROR (%d, %d): Invalid number %s\n", line, col, num);
-			return createToken(NONE);
+			if (value > (Integer.MAX_VALUE - digit) / 10) {
+				diagnostics.report(Diagnostics.Code.INVALID_NUMBER, pos - 1, lexStart, lexLength);
+				return NONE;
+			}
+
+			value = value * 10 + digit;
 		}
+
+		intValue = value;
+		return NUMBER;
 	}
 
 	/**
 	 * Read a character constant.
 	 * 
-	 * @return the token of the character
+	 * @return the token type of the character
 	 */
-	private Token readChar() {
+	TokenType readChar() {
 		// At the beginning ch holds a single quote.
 		nextCharacter();
 		// If the character is empty.
 		if (ch == '\'') {
 			nextCharacter();
-			System.err.printf("ERROR (%d, %d): Empty character\n", line, col);
-			return createToken(CHARACTER, "");
+			diagnostics.report(Diagnostics.Code.EMPTY_CHARACTER, pos - 1);
+			lexStart = pos - 2;
+			lexLength = 0;
+			intValue = -1;
+			return CHARACTER;
 		}
 
-		lex[0] = ch;
-		int i = 1;
-		nextCharacter();
+		lexStart = pos - 1;
+		char first = ch;
+		// A quote at the end of the source is unterminated, and the token
+		// ends there.
+		if (ch != EOF_CH) {
+			nextCharacter();
+		}
 		// Reads further characters.
-		while (ch != '\'' && ch != EOL && ch != '\r' && ch != EOF_CH && i < 64) {
-			lex[i++] = ch;
+		while (ch != '\'' && ch != EOL && ch != '\r' && ch != EOF_CH) {
 			nextCharacter();
 		}
 		// If the character is unterminated.
 		if (ch != '\'') {
-			System.err.printf("ERROR (%d, %d): Unterminated char\n", line, col);
-			return createToken(CHARACTER, Character.toString(EOF_CH));
+			diagnostics.report(Diagnostics.Code.UNTERMINATED_CHARACTER, pos - 1);
+			intValue = EOF_CH;
+			return CHARACTER;
 		}
 
+		lexLength = pos - 1 - lexStart;
 		// At the end ch holds the first character after the closing quote.
 		nextCharacter();
 
-		String content = new String(lex, 0, i);
-		if (content.length() > 1) {
-			System.err.printf("ERROR (%d, %d): Invalid character '%s'\n", line, col, content);
-			return createToken(CHARACTER, content);
-		} else if (content.length() == 1) {
-			return createToken(CHARACTER, Character.toString(lex[0]));
-		} else if (content.equals("\\n")) {
-			return createToken(CHARACTER, "\n");
-		} else if (content.equals("\\t")) {
-			return createToken(CHARACTER, "\t");
-		} else if (content.equals("\\r")) {
-			return createToken(CHARACTER, "\r");
-		} else if (content.equals("\\''")) {
-			return createToken(CHARACTER, "'");
+		if (lexLength > 1) {
+			diagnostics.report(Diagnostics.Code.INVALID_CHARACTER, pos - 1, lexStart, lexLength);
+			intValue = -1;
+		} else {
+			intValue = first;
 		}
 
-		return createToken(CHARACTER, Character.toString(EOF_CH));
+		return CHARACTER;
+	}
+
+	/**
+	 * Returns the characters of the current name or number, which are all
+	 * ASCII. They are in {@code buf} from {@code lexStart}, but a subclass
+	 * reading another buffer copies them.
+	 * 
+	 * @return the array of the characters, from {@link #lexemeOffset()}
+	 */
+	char[] lexeme() {
+		return buf;
+	}
+
+	/**
+	 * @return the position of the current name or number in the array
+	 *         returned by {@link #lexeme()}
+	 */
+	int lexemeOffset() {
+		return lexStart;
 	}
 
 	/**
@@ -338,23 +740,94 @@ public class Scanner {
 	}
 
 	/**
-	 * Create a token of type {@code type}.
+	 * Finds the keyword spelled by a name, without creating a string.
+	 * The keyword candidates are selected by the length and the first
+	 * character of the name.
 	 * 
-	 * @param type the type of the token
-	 * @return the created token
+	 * @param s the characters of the name
+	 * @param offset the position of the name in {@code s}
+	 * @param length the length of the name
+	 * @return the type of the keyword, or {@code IDENTIFIER} if it's not one
 	 */
-	private Token createToken(TokenType type) {
-		return createToken(type, null);
+	static TokenType keyword(char[] s, int offset, int length) {
+		switch (length) {
+			case 2:
+				if (matches(s, offset, "if")) return IF;
+				break;
+			case 3:
+				if (matches(s, offset, "new")) return NEW;
+				break;
+			case 4:
+				switch (s[offset]) {
+					case 'e': if (matches(s, offset, "else")) return ELSE; break;
+					case 'r': if (matches(s, offset, "read")) return READ; break;
+					case 'v': if (matches(s, offset, "void")) return VOID; break;
+				}
+				break;
+			case 5:
+				switch (s[offset]) {
+					case 'c': if (matches(s, offset, "class")) return CLASS; break;
+					case 'f': if (matches(s, offset, "final")) return FINAL; break;
+					case 'p': if (matches(s, offset, "print")) return PRINT; break;
+					case 'w': if (matches(s, offset, "while")) return WHILE; break;
+				}
+				break;
+			case 6:
+				if (matches(s, offset, "return")) return RETURN;
+				break;
+			case 7:
+				if (matches(s, offset, "program")) return PROGRAM;
+				break;
+		}
+
+		return IDENTIFIER;
 	}
 
 	/**
-	 * Create a token of a literal type.
+	 * Checks if a name is spelled as a keyword of the same length.
+	 * 
+	 * @param s the characters of the name
+	 * @param offset the position of the name in {@code s}
+	 * @param keyword the keyword
+	 * @return {@code true} if the name is the keyword
+	 */
+	private static boolean matches(char[] s, int offset, String keyword) {
+		for (int i = keyword.length() - 1; i >= 0; i--) {
+			if (s[offset + i] != keyword.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if the token type is a keyword.
+	 * 
+	 * @param type the token type to be checked
+	 * @return {@code true} if the type is a keyword
+	 */
+	private static boolean isKeyword(TokenType type) {
+		return type.compareTo(CLASS) >= 0 && type.compareTo(WHILE) <= 0;
+	}
+
+	/**
+	 * Creates the value of the current token, for a {@link Token}.
 	 * 
 	 * @param type the type of the token
-	 * @param value the literal value
-	 * @return the created token
+	 * @return the literal value, or {@code null} if the token has none
 	 */
-	private Token createToken(TokenType type, Object value) {
-		return new Token(type, line, col, value);
+	private Object value(TokenType type) {
+		if (type == IDENTIFIER) {
+			return names.name(names.add(lexeme(), lexemeOffset(), lexLength));
+		} else if (isKeyword(type)) {
+			return new String(lexeme(), lexemeOffset(), lexLength);
+		} else if (type == NUMBER) {
+			return intValue;
+		} else if (type == CHARACTER) {
+			return (intValue >= 0)
+				? Character.toString((char) intValue)
+				: new String(lines.source(), lexStart, lexLength);
+		}
+
+		return null;
 	}
 }
@@ -0,0 +1,315 @@
+package microjava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Character classes and transition matrix of the table driven scanner.
+ *
+ * The matrix is built from the fixed spellings of the token types: each
+ * character used by a spelling gets its own class, and the spellings are
+ * added as paths from the start state. Keyword prefixes accept identifiers,
+ * and operator prefixes without a spelling of their own accept errors.
+ */
+final class ScannerTables {
+	/**
+	 * Class of the characters that don't belong to any other class.
+	 */
+	static final int OTHER = 0;
+	/**
+	 * Class of the letters that are not used by any spelling.
+	 */
+	static final int LETTER = 1;
+	/**
+	 * Class of the digits.
+	 */
+	static final int DIGIT = 2;
+	/**
+	 * Class of the whitespace, except the end of line.
+	 */
+	static final int SPACE = 3;
+	/**
+	 * Class of the end of line.
+	 */
+	static final int EOL = 4;
+	/**
+	 * Class of the quote, which starts a character constant.
+	 */
+	static final int QUOTE = 5;
+	/**
+	 * Class of the end of file character.
+	 */
+	static final int END = 6;
+
+	/**
+	 * Number of character classes.
+	 */
+	static final int CLASSES;
+	/**
+	 * Class of each character up to the end of file character.
+	 */
+	private static final byte[] CHAR_CLASS = new byte[Scanner.EOF_CH + 1];
+
+	/**
+	 * Start state.
+	 */
+	static final int START = 0;
+	/**
+	 * Next state of each state and character class, or -1 if there's none.
+	 */
+	private static final int[] NEXT;
+	/**
+	 * Token type accepted by each state.
+	 */
+	private static final TokenType[] ACCEPT;
+	/**
+	 * States of whitespace and comments, which are skipped.
+	 */
+	private static final boolean[] SKIP;
+	/**
+	 * State of comments.
+	 */
+	private static final int COMMENT;
+
+	static {
+		for (char c = 0; c < CHAR_CLASS.length; c++) {
+			if (c == '\n') {
+				CHAR_CLASS[c] = EOL;
+			} else if (c <= ' ') {
+				CHAR_CLASS[c] = SPACE;
+			} else if (c == '\'') {
+				CHAR_CLASS[c] = QUOTE;
+			} else if (c == Scanner.EOF_CH) {
+				CHAR_CLASS[c] = END;
+			} else if (c >= '0' && c <= '9') {
+				CHAR_CLASS[c] = DIGIT;
+			} else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+				CHAR_CLASS[c] = LETTER;
+			}
+		}
+
+		// Gives each character of the spellings its own class.
+		int classes = END + 1;
+		List<Integer> letters = new ArrayList<>();
+		letters.add(LETTER);
+
+		for (TokenType type : TokenType.values()) {
+			String lexeme = type.lexeme();
+			if (lexeme == null) continue;
+
+			for (char c : lexeme.toCharArray()) {
+				if (CHAR_CLASS[c] == OTHER || CHAR_CLASS[c] == LETTER) {
+					if (CHAR_CLASS[c] == LETTER) letters.add(classes);
+					CHAR_CLASS[c] = (byte) classes++;
+				}
+			}
+		}
+
+		CLASSES = classes;
+
+		Builder builder = new Builder(letters);
+		builder.build();
+		NEXT = builder.next();
+		COMMENT = builder.comment;
+		ACCEPT = builder.accept.toArray(new TokenType[0]);
+		SKIP = new boolean[ACCEPT.length];
+		for (int i = 0; i < SKIP.length; i++) {
+			SKIP[i] = builder.skip.get(i);
+		}
+	}
+
+	private ScannerTables() {
+	}
+
+	/**
+	 * @param c a character
+	 * @return the class of the character
+	 */
+	static int classOf(char c) {
+		return (c < CHAR_CLASS.length) ? CHAR_CLASS[c] : OTHER;
+	}
+
+	/**
+	 * @param state the current state
+	 * @param cls the class of the lookahead character
+	 * @return the next state, or -1 if there's none
+	 */
+	static int next(int state, int cls) {
+		return NEXT[state * CLASSES + cls];
+	}
+
+	/**
+	 * @param state a state
+	 * @return the token type accepted by the state
+	 */
+	static TokenType accept(int state) {
+		return ACCEPT[state];
+	}
+
+	/**
+	 * @param state a state
+	 * @return {@code true} if the state is of whitespace or a comment
+	 */
+	static boolean skip(int state) {
+		return SKIP[state];
+	}
+
+	/**
+	 * @param state a state
+	 * @return {@code true} if the state is of a comment
+	 */
+	static boolean comment(int state) {
+		return state == COMMENT;
+	}
+
+	/**
+	 * Builder of the transition matrix.
+	 */
+	private static class Builder {
+		/**
+		 * Classes of letters.
+		 */
+		final List<Integer> letters;
+		/**
+		 * Transitions of each state.
+		 */
+		final List<int[]> rows = new ArrayList<>();
+		/**
+		 * Token type accepted by each state.
+		 */
+		final List<TokenType> accept = new ArrayList<>();
+		/**
+		 * If each state is skipped.
+		 */
+		final List<Boolean> skip = new ArrayList<>();
+		/**
+		 * State of comments.
+		 */
+		int comment;
+
+		Builder(List<Integer> letters) {
+			this.letters = letters;
+		}
+
+		/**
+		 * Adds the states of whitespace, comments, names, numbers and spellings.
+		 */
+		void build() {
+			int start = state(null, false);
+			int name = state(TokenType.IDENTIFIER, false);
+			int number = state(TokenType.NUMBER, false);
+			int space = state(null, true);
+			comment = state(null, true);
+			int none = state(TokenType.NONE, false);
+
+			letters(start, name);
+			letters(name, name);
+			row(name)[DIGIT] = name;
+			row(start)[DIGIT] = number;
+			row(number)[DIGIT] = number;
+			row(start)[SPACE] = space;
+			row(start)[EOL] = space;
+			row(space)[SPACE] = space;
+			row(space)[EOL] = space;
+			row(start)[OTHER] = none;
+
+			// A comment goes until the end of line or file.
+			Arrays.fill(row(comment), comment);
+			row(comment)[EOL] = -1;
+			row(comment)[END] = -1;
+
+			for (TokenType type : TokenType.values()) {
+				if (type.lexeme() != null) {
+					accept.set(path(type.lexeme(), name, none), type);
+				}
+			}
+
+			int slash = path(TokenType.SLASH.lexeme(), name, none);
+			row(slash)[classOf('/')] = comment;
+		}
+
+		/**
+		 * Adds the path of a spelling from the start state.
+		 *
+		 * @param lexeme the spelling
+		 * @param name the state of names
+		 * @param none the state of unknown characters
+		 * @return the last state of the path
+		 */
+		int path(String lexeme, int name, int none) {
+			int state = START;
+
+			for (char c : lexeme.toCharArray()) {
+				int cls = classOf(c);
+				int next = row(state)[cls];
+
+				if (next == -1 || next == name || next == none) {
+					if (letters.contains(cls)) {
+						// A prefix of a keyword is still a name.
+						next = state(TokenType.IDENTIFIER, false);
+						letters(next, name);
+						row(next)[DIGIT] = name;
+					} else {
+						next = state(TokenType.NONE, false);
+					}
+
+					row(state)[cls] = next;
+				}
+
+				state = next;
+			}
+
+			return state;
+		}
+
+		/**
+		 * Adds a state without transitions.
+		 *
+		 * @param type the token type accepted by the state
+		 * @param skipped if the state is of whitespace or a comment
+		 * @return the new state
+		 */
+		int state(TokenType type, boolean skipped) {
+			int[] row = new int[CLASSES];
+			Arrays.fill(row, -1);
+			rows.add(row);
+			accept.add(type);
+			skip.add(skipped);
+			return rows.size() - 1;
+		}
+
+		/**
+		 * Makes every letter go from a state to another.
+		 *
+		 * @param from the source state
+		 * @param to the target state
+		 */
+		void letters(int from, int to) {
+			for (int cls : letters) {
+				row(from)[cls] = to;
+			}
+		}
+
+		/**
+		 * @param state a state
+		 * @return the transitions of the state
+		 */
+		int[] row(int state) {
+			return rows.get(state);
+		}
+
+		/**
+		 * @return the transitions of all states, one row after the other
+		 */
+		int[] next() {
+			int[] next = new int[rows.size() * CLASSES];
+
+			for (int i = 0; i < rows.size(); i++) {
+				System.arraycopy(rows.get(i), 0, next, i * CLASSES, CLASSES);
+			}
+
+			return next;
+		}
+	}
+}
@@ -0,0 +1,561 @@
+package microjava;
+
+import java.util.Arrays;
+
+/**
+ * Syntax tree of a source, stored in an arena of parallel arrays of
+ * primitives instead of an object per node.
+ *
+ * A node is an index in the arrays, with a kind, its first child, its next
+ * sibling and the index of its token in the {@link TokenBuffer} of the
+ * source. The {@link NodeKind} of a node tells which token and children it
+ * has. Nodes are numbered in the order they are created, which is not
+ * the order of the source: an operator is created after its left operand.
+ *
+ * A {@link Cursor} walks the tree without creating an object per node.
+ * The tree only keeps token indices, so it is valid as long as its token
+ * buffer is not refilled.
+ */
+public class SyntaxTree {
+	/**
+	 * Index of no node, for a missing child, sibling or root.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Node kinds, indexed by ordinal.
+	 */
+	private static final NodeKind[] KINDS = NodeKind.values();
+
+	/**
+	 * Tokens of the source.
+	 */
+	private final TokenBuffer tokens;
+	/**
+	 * Names of the identifiers of the source.
+	 */
+	private final NameTable names;
+	/**
+	 * Node kind ordinals.
+	 */
+	private byte[] kinds;
+	/**
+	 * First child of each node, or NONE.
+	 */
+	private int[] firstChildren;
+	/**
+	 * Next sibling of each node, or NONE.
+	 */
+	private int[] nextSiblings;
+	/**
+	 * Token index of each node in {@code tokens}.
+	 */
+	private int[] tokenIndices;
+	/**
+	 * Number of nodes in the arena.
+	 */
+	private int size;
+	/**
+	 * Root of the tree, or NONE.
+	 */
+	private int root = NONE;
+
+	/**
+	 * Creates an empty tree.
+	 *
+	 * @param tokens the tokens of the source
+	 * @param names the names of the identifiers of the source
+	 */
+	public SyntaxTree(TokenBuffer tokens, NameTable names) {
+		this.tokens = tokens;
+		this.names = names;
+		int capacity = 1024;
+		kinds = new byte[capacity];
+		firstChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		tokenIndices = new int[capacity];
+	}
+
+	/**
+	 * Removes all the nodes, keeping the allocated space.
+	 */
+	public void clear() {
+		size = 0;
+		root = NONE;
+	}
+
+	/**
+	 * @return the number of nodes in the arena
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the root of the tree, or NONE if there's none
+	 */
+	public int root() {
+		return root;
+	}
+
+	/**
+	 * @param root the root of the tree
+	 */
+	void setRoot(int root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return the tokens of the source
+	 */
+	public TokenBuffer tokens() {
+		return tokens;
+	}
+
+	/**
+	 * @return the names of the identifiers of the source
+	 */
+	public NameTable names() {
+		return names;
+	}
+
+	/**
+	 * @param node a node
+	 * @return the kind of the node
+	 */
+	public NodeKind kind(int node) {
+		return KINDS[kinds[node]];
+	}
+
+	/**
+	 * @param node a node
+	 * @return the first child of the node, or NONE
+	 */
+	public int firstChild(int node) {
+		return firstChildren[node];
+	}
+
+	/**
+	 * @param node a node
+	 * @return the next sibling of the node, or NONE
+	 */
+	public int nextSibling(int node) {
+		return nextSiblings[node];
+	}
+
+	/**
+	 * @param node a node
+	 * @return the index of the token of the node in {@link #tokens()}
+	 */
+	public int token(int node) {
+		return tokenIndices[node];
+	}
+
+	/**
+	 * @return the number of bytes taken by the arrays of the arena
+	 */
+	public long memory() {
+		return kinds.length + 3L * Integer.BYTES * firstChildren.length;
+	}
+
+	/**
+	 * @return a new cursor at the root of the tree
+	 */
+	public Cursor cursor() {
+		return new Cursor(root);
+	}
+
+	/**
+	 * Adds a node without children.
+	 *
+	 * @param kind the kind of the node
+	 * @param token the index of the token of the node
+	 * @return the new node
+	 */
+	int add(NodeKind kind, int token) {
+		if (size == kinds.length) {
+			grow(size + 1);
+		}
+
+		kinds[size] = (byte) kind.ordinal();
+		firstChildren[size] = NONE;
+		nextSiblings[size] = NONE;
+		tokenIndices[size] = token;
+		return size++;
+	}
+
+	/**
+	 * Adds all the nodes of another tree over the same tokens, such as the
+	 * tree of a part of the source parsed apart. Its nodes keep their
+	 * order, after the ones of this tree.
+	 *
+	 * @param other the other tree
+	 * @return the number added to a node of the other tree to get the
+	 *         same node in this tree
+	 */
+	int addAll(SyntaxTree other) {
+		int offset = size;
+		if (size + other.size > kinds.length) {
+			grow(size + other.size);
+		}
+
+		System.arraycopy(other.kinds, 0, kinds, offset, other.size);
+		System.arraycopy(other.tokenIndices, 0, tokenIndices, offset, other.size);
+		for (int i = 0; i < other.size; i++) {
+			int child = other.firstChildren[i];
+			int sibling = other.nextSiblings[i];
+			firstChildren[offset + i] = (child == NONE) ? NONE : child + offset;
+			nextSiblings[offset + i] = (sibling == NONE) ? NONE : sibling + offset;
+		}
+
+		size += other.size;
+		return offset;
+	}
+
+	/**
+	 * Grows the arrays, at least doubling them.
+	 *
+	 * @param capacity the minimum number of nodes
+	 */
+	private void grow(int capacity) {
+		capacity = Math.max(capacity, kinds.length * 2);
+		kinds = Arrays.copyOf(kinds, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		tokenIndices = Arrays.copyOf(tokenIndices, capacity);
+	}
+
+	/**
+	 * Adds a node with up to two children.
+	 *
+	 * @param kind the kind of the node
+	 * @param token the index of the token of the node
+	 * @param first the first child, or NONE
+	 * @param second the second child, or NONE
+	 * @return the new node
+	 */
+	int add(NodeKind kind, int token, int first, int second) {
+		int node = add(kind, token);
+		append(node, append(node, NONE, first), second);
+		return node;
+	}
+
+	/**
+	 * Appends a child to a node, after its last child.
+	 *
+	 * @param parent the node
+	 * @param last the last child of the node, or NONE if it has none
+	 * @param child the new child, without siblings, or NONE to add nothing
+	 * @return the last child of the node
+	 */
+	int append(int parent, int last, int child) {
+		if (child == NONE) {
+			return last;
+		}
+
+		if (last == NONE) {
+			firstChildren[parent] = child;
+		} else {
+			nextSiblings[last] = child;
+		}
+
+		return child;
+	}
+
+	/**
+	 * Makes a node follow a child of another node, or be its first child,
+	 * dropping the siblings that followed.
+	 *
+	 * @param parent the other node
+	 * @param previous the child, or NONE for the first child
+	 * @param node the node, or NONE to end the children there
+	 */
+	void link(int parent, int previous, int node) {
+		if (previous == NONE) {
+			firstChildren[parent] = node;
+		} else {
+			nextSiblings[previous] = node;
+		}
+	}
+
+	/**
+	 * Adds a number to the token indices of the nodes from a token on, after
+	 * the tokens before it were replaced.
+	 *
+	 * @param from the index of the first token moved, before the change
+	 * @param delta the number of tokens added before it
+	 */
+	void moveTokens(int from, int delta) {
+		for (int i = 0; i < size; i++) {
+			if (tokenIndices[i] >= from) {
+				tokenIndices[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Removes the nodes that are not in the tree, such as the ones of
+	 * replaced subtrees. The others are renumbered in the order of a walk
+	 * of the tree.
+	 */
+	void compact() {
+		if (root == NONE) {
+			clear();
+			return;
+		}
+
+		int[] numbers = new int[size];
+		Arrays.fill(numbers, NONE);
+		int[] stack = new int[16];
+		int top = 0;
+		int count = 0;
+		stack[top++] = root;
+
+		// Each node is numbered before its children, and they before its next sibling.
+		while (top > 0) {
+			int node = stack[--top];
+			numbers[node] = count++;
+
+			if (top + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (nextSiblings[node] != NONE) {
+				stack[top++] = nextSiblings[node];
+			}
+			if (firstChildren[node] != NONE) {
+				stack[top++] = firstChildren[node];
+			}
+		}
+
+		byte[] newKinds = new byte[Math.max(count, 1024)];
+		int[] newFirstChildren = new int[newKinds.length];
+		int[] newNextSiblings = new int[newKinds.length];
+		int[] newTokenIndices = new int[newKinds.length];
+
+		for (int i = 0; i < size; i++) {
+			int n = numbers[i];
+			if (n == NONE) continue;
+
+			newKinds[n] = kinds[i];
+			newFirstChildren[n] = (firstChildren[i] == NONE) ? NONE : numbers[firstChildren[i]];
+			newNextSiblings[n] = (nextSiblings[i] == NONE) ? NONE : numbers[nextSiblings[i]];
+			newTokenIndices[n] = tokenIndices[i];
+		}
+
+		kinds = newKinds;
+		firstChildren = newFirstChildren;
+		nextSiblings = newNextSiblings;
+		tokenIndices = newTokenIndices;
+		size = count;
+		root = numbers[root];
+	}
+
+	/**
+	 * Replaces a child of a node by another node, which takes its siblings.
+	 *
+	 * @param parent the node
+	 * @param previous the child before the one replaced, or NONE if it is
+	 *        the first one
+	 * @param child the child replaced
+	 * @param node the new child, without siblings
+	 */
+	void replace(int parent, int previous, int child, int node) {
+		nextSiblings[node] = nextSiblings[child];
+
+		if (previous == NONE) {
+			firstChildren[parent] = node;
+		} else {
+			nextSiblings[previous] = node;
+		}
+	}
+
+	/**
+	 * Describes the tree, one node per line, indented by depth.
+	 *
+	 * @return the description
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		Cursor cursor = cursor();
+
+		if (root == NONE) {
+			return "";
+		}
+
+		while (true) {
+			for (int i = 0; i < cursor.depth(); i++) {
+				text.append("  ");
+			}
+			text.append(cursor.kind()).append(' ').append(cursor.text()).append('\n');
+
+			if (cursor.firstChild()) continue;
+
+			while (!cursor.nextSibling()) {
+				if (!cursor.parent()) return text.toString();
+			}
+		}
+	}
+
+	/**
+	 * Flyweight over the nodes of the tree, which moves from node to node
+	 * and reads the one it is at. It remembers the path from where it
+	 * started, so it can go back up.
+	 */
+	public class Cursor {
+		/**
+		 * Node the cursor is at.
+		 */
+		private int node;
+		/**
+		 * Ancestors of the node, from where the cursor started.
+		 */
+		private int[] path = new int[16];
+		/**
+		 * Number of ancestors in {@code path}.
+		 */
+		private int depth;
+
+		/**
+		 * @param node the node where the cursor starts
+		 */
+		private Cursor(int node) {
+			this.node = node;
+		}
+
+		/**
+		 * Moves to a node, forgetting the path so far.
+		 *
+		 * @param node the node
+		 * @return this cursor
+		 */
+		public Cursor reset(int node) {
+			this.node = node;
+			depth = 0;
+			return this;
+		}
+
+		/**
+		 * @return the node the cursor is at
+		 */
+		public int node() {
+			return node;
+		}
+
+		/**
+		 * @return the number of ancestors above the node, from where the
+		 *         cursor started
+		 */
+		public int depth() {
+			return depth;
+		}
+
+		/**
+		 * @return the kind of the node
+		 */
+		public NodeKind kind() {
+			return KINDS[kinds[node]];
+		}
+
+		/**
+		 * @return the index of the token of the node
+		 */
+		public int token() {
+			return tokenIndices[node];
+		}
+
+		/**
+		 * @return the position of the token of the node from start of
+		 *         source file
+		 */
+		public int start() {
+			return tokens.start(tokenIndices[node]);
+		}
+
+		/**
+		 * @return the value of the token of the node, as in {@link TokenBuffer#value(int)}
+		 */
+		public int value() {
+			return tokens.value(tokenIndices[node]);
+		}
+
+		/**
+		 * @return the name of the identifier of the node, or {@code null} if
+		 *         its token isn't an identifier
+		 */
+		public String name() {
+			int token = tokenIndices[node];
+			return (tokens.kind(token) == TokenType.IDENTIFIER) ? names.name(tokens.value(token)) : null;
+		}
+
+		/**
+		 * @return the text of the token of the node, with the value for
+		 *         identifiers, numbers and characters
+		 */
+		public String text() {
+			int token = tokenIndices[node];
+			TokenType type = tokens.kind(token);
+
+			switch (type) {
+				case IDENTIFIER:
+					return names.name(tokens.value(token));
+				case NUMBER:
+					return Integer.toString(tokens.value(token));
+				case CHARACTER:
+					return (tokens.value(token) >= 0) ? "'" + (char) tokens.value(token) + "'" : "''";
+				default:
+					return (type.lexeme() != null) ? type.lexeme() : type.toString();
+			}
+		}
+
+		/**
+		 * Moves to the first child of the node, if it has one.
+		 *
+		 * @return {@code true} if the cursor moved
+		 */
+		public boolean firstChild() {
+			int child = firstChildren[node];
+			if (child == NONE) {
+				return false;
+			}
+
+			if (depth == path.length) {
+				path = Arrays.copyOf(path, depth * 2);
+			}
+
+			path[depth++] = node;
+			node = child;
+			return true;
+		}
+
+		/**
+		 * Moves to the next sibling of the node, if it has one.
+		 *
+		 * @return {@code true} if the cursor moved
+		 */
+		public boolean nextSibling() {
+			int sibling = nextSiblings[node];
+			if (sibling == NONE) {
+				return false;
+			}
+
+			node = sibling;
+			return true;
+		}
+
+		/**
+		 * Moves to the parent of the node, if it is below where the cursor
+		 * started.
+		 *
+		 * @return {@code true} if the cursor moved
+		 */
+		public boolean parent() {
+			if (depth == 0) {
+				return false;
+			}
+
+			node = path[--depth];
+			return true;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package microjava;
+
+import java.util.Arrays;
+
+import static microjava.TokenType.*;
+
+/**
+ * Parser that follows the LL(1) table of {@link ParserTables} with an
+ * explicit stack of symbols, instead of the recursive descent methods of
+ * {@link Parser}. Both accept the same sources, except the ones with
+ * Statements nested deeper than {@link Parser#MAX_NESTING}, which only
+ * this one accepts.
+ *
+ * The stack holds the symbols still to be matched, the next one on top.
+ * A token on top must be the lookahead token, and a nonterminal is
+ * replaced by the production the table gives for the lookahead token, so
+ * each step is an array lookup and the Java stack is not used however
+ * deep the source is nested. The parser only recognizes the source: it
+ * builds no tree, and stops at the first error.
+ */
+public class TableParser {
+	/**
+	 * Scanner returning token to parse.
+	 */
+	private final Scanner scanner;
+
+	/**
+	 * Tokens of the source.
+	 */
+	private final TokenBuffer tokens;
+
+	/**
+	 * Symbols still to be matched, the next one last.
+	 */
+	private int[] stack = new int[64];
+
+	/**
+	 * Errors count, which is 0 or 1.
+	 */
+	public int errors;
+
+	/**
+	 * Creates a new table driven parser, with the provided Scanner for
+	 * obtaining tokens.
+	 *
+	 * @param scanner the scanner
+	 */
+	public TableParser(Scanner scanner) {
+		this(scanner, new TokenBuffer());
+	}
+
+	/**
+	 * Creates a new table driven parser, with the provided Scanner for
+	 * obtaining tokens and a token buffer to hold them, which can be reused
+	 * between parsers.
+	 *
+	 * @param scanner the scanner
+	 * @param tokens the token buffer
+	 */
+	public TableParser(Scanner scanner, TokenBuffer tokens) {
+		this.scanner = scanner;
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Scans the source and parses it, reporting the first error to the
+	 * diagnostics of the scanner.
+	 */
+	public void parse() {
+		errors = 0;
+		tokens.clear();
+		scanner.tokenize(tokens);
+
+		int top = 0;
+		stack[top++] = EOF.ordinal();
+		stack[top++] = ParserTables.START;
+		int cursor = 0;
+
+		while (top > 0) {
+			int symbol = stack[--top];
+			int token = tokens.kind(cursor).ordinal();
+
+			if (symbol < ParserTables.TOKENS) {
+				if (symbol != token) {
+					error(Diagnostics.Code.EXPECTED, cursor, symbol, token);
+					return;
+				}
+
+				if (token != EOF.ordinal()) {
+					cursor++;
+				}
+				continue;
+			}
+
+			int production = ParserTables.production(symbol, token);
+			if (production < 0) {
+				error(Diagnostics.Code.UNEXPECTED_TOKEN, cursor, token, 0);
+				return;
+			}
+
+			int start = ParserTables.start(production);
+			int end = ParserTables.end(production);
+
+			if (top + end - start > stack.length) {
+				stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + end - start));
+			}
+
+			// The first symbol of the production ends on top.
+			for (int i = end - 1; i >= start; i--) {
+				stack[top++] = ParserTables.symbol(i);
+			}
+		}
+	}
+
+	/**
+	 * Reports a compiler error to the diagnostics of the scanner.
+	 *
+	 * @param code the error
+	 * @param cursor the index of the token where the error is found
+	 * @param first the first argument of the message
+	 * @param second the second argument of the message
+	 */
+	private void error(Diagnostics.Code code, int cursor, int first, int second) {
+		scanner.diagnostics().report(code, tokens.end(cursor), first, second);
+		errors++;
+	}
+}
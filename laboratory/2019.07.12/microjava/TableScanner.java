@@ -0,0 +1,64 @@
+package microjava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+
+import static microjava.TokenType.*;
+
+/**
+ * Scanner that finds the tokens by following the transition matrix of
+ * {@link ScannerTables}, instead of the hand written rules of
+ * {@link Scanner}. Both produce the same tokens.
+ */
+public class TableScanner extends Scanner {
+	/**
+	 * Creates a table driven Scanner.
+	 * @param reader the input source
+	 */
+	public TableScanner(Reader reader) {
+		super(reader);
+	}
+
+	/**
+	 * Creates a table driven Scanner that reads the source file through a
+	 * memory map.
+	 *
+	 * @param path the source file
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public TableScanner(Path path) throws IOException {
+		super(path);
+	}
+
+	@Override
+	TokenType scanToken() {
+		while (true) {
+			tokenStart = pos - 1;
+			intValue = 0;
+
+			int state = ScannerTables.START;
+			int next = ScannerTables.next(state, ScannerTables.classOf(ch));
+
+			// Only the end of file and character constants have no transition.
+			if (next < 0) {
+				return (ch == EOF_CH) ? EOF : readChar();
+			}
+
+			do {
+				state = next;
+				nextCharacter();
+				next = ScannerTables.next(state, ScannerTables.classOf(ch));
+			} while (next >= 0);
+
+			if (!ScannerTables.skip(state)) {
+				TokenType type = ScannerTables.accept(state);
+				lexStart = tokenStart;
+				lexLength = pos - 1 - tokenStart;
+				return (type == NUMBER) ? number() : type;
+			} else if (trivia != null && ScannerTables.comment(state)) {
+				trivia.add(tokenStart, pos - 1 - tokenStart);
+			}
+		}
+	}
+}
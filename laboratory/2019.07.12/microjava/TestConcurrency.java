@@ -0,0 +1,156 @@
+/*  MicroJava Concurrency Tester
+ *  ============================
+ *  Place this file in a subdirectory microjava
+ *  Compile with
+ *    javac microjava\*.java
+ *  Run with
+ *    java microjava.TestConcurrency <inputFileName> ...
+ */
+package microjava;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that scans and parses many source files in parallel and checks the
+ * tokens, syntax trees and errors against a sequential run of the same
+ * files.
+ */
+public class TestConcurrency {
+	/**
+	 * Number of times each source file is scanned and parsed in parallel.
+	 */
+	private static final int COPIES = 100;
+
+	/**
+	 * Fewest threads run, so the scans and parses overlap even on a single
+	 * processor.
+	 */
+	private static final int MIN_THREADS = 8;
+
+	/**
+	 * Main method of the concurrency tester.
+	 */
+	public static void main(String args[]) throws InterruptedException {
+		if (args.length == 0) {
+			System.out.println("Synopsis: java microjava.TestConcurrency <inputfileName> ...");
+			return;
+		}
+
+		List<Path> sources = new ArrayList<>();
+		List<List<String>> expectedTokens = new ArrayList<>();
+		List<String> expectedTrees = new ArrayList<>();
+
+		try {
+			for (String arg : args) {
+				Path source = Paths.get(arg);
+				sources.add(source);
+				expectedTokens.add(scan(source));
+				expectedTrees.add(parse(source));
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot open input file " + e.getMessage());
+			return;
+		}
+
+		int threads = Math.max(MIN_THREADS, Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<List<String>>> scans = new ArrayList<>();
+		List<Future<String>> parses = new ArrayList<>();
+
+		// Scans and parses are interleaved, so they also run at the same time.
+		for (int copy = 0; copy < COPIES; copy++) {
+			for (Path source : sources) {
+				scans.add(pool.submit(() -> scan(source)));
+				parses.add(pool.submit(() -> parse(source)));
+			}
+		}
+
+		int mismatches = check(sources, expectedTokens, scans, "Token stream", "Scan");
+		mismatches += check(sources, expectedTrees, parses, "Syntax tree", "Parse");
+
+		pool.shutdown();
+		System.out.printf(
+			"%d scans and %d parses on %d threads, %d mismatches\n",
+			scans.size(),
+			parses.size(),
+			threads,
+			mismatches
+		);
+	}
+
+	/**
+	 * Checks the results of the parallel runs against the sequential run.
+	 *
+	 * @param sources the source files
+	 * @param expected the result of the sequential run of each file
+	 * @param results the parallel runs, in turn on each file
+	 * @param result what the result is, for the mismatches printed
+	 * @param run what the run is, for the failures printed
+	 * @return the number of runs that failed or found another result
+	 * @throws InterruptedException if interrupted while waiting for a run
+	 */
+	private static <T> int check(List<Path> sources, List<T> expected, List<Future<T>> results, String result, String run) throws InterruptedException {
+		int mismatches = 0;
+
+		for (int i = 0; i < results.size(); i++) {
+			int file = i % sources.size();
+
+			try {
+				if (!results.get(i).get().equals(expected.get(file))) {
+					System.err.println(result + " mismatch in " + sources.get(file));
+					mismatches++;
+				}
+			} catch (ExecutionException e) {
+				System.err.println(run + " of " + sources.get(file) + " failed: " + e.getCause());
+				mismatches++;
+			}
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * Scans a source file until the end.
+	 *
+	 * @param source the source file
+	 * @return the tokens found, as text
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static List<String> scan(Path source) throws IOException {
+		List<String> tokens = new ArrayList<>();
+		Scanner scanner = new Scanner(source);
+		Token t;
+
+		do {
+			t = scanner.next();
+			tokens.add(t.toString());
+		} while (t.kind != TokenType.EOF);
+
+		return tokens;
+	}
+
+	/**
+	 * Parses a source file.
+	 *
+	 * @param source the source file
+	 * @return the syntax tree and the errors, as text
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static String parse(Path source) throws IOException {
+		Scanner scanner = new Scanner(source);
+		Parser parser = new Parser(scanner);
+		parser.parse();
+
+		StringBuilder text = new StringBuilder(parser.tree().toString());
+		scanner.diagnostics().render(text);
+		return text.toString();
+	}
+}
@@ -0,0 +1,320 @@
+/*  MicroJava Scanner Engines Tester
+ *  ================================
+ *  Place this file in a subdirectory microjava
+ *  Compile with
+ *    javac microjava\*.java
+ *  Run with
+ *    java microjava.TestEngines <inputFileName> ...
+ */
+package microjava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that checks that every scanner engine produces the same tokens as
+ * {@link Scanner} on the given source files, on sources that end inside a
+ * token, and on random sources made of pieces of tokens, broken literals
+ * and comments. It also checks that the text of each token is the part of
+ * the source it spans.
+ */
+public class TestEngines {
+	/**
+	 * Number of random sources checked.
+	 */
+	private static final int RANDOM_SOURCES = 1000;
+
+	/**
+	 * Longest random source, in pieces.
+	 */
+	private static final int MAX_PIECES = 200;
+
+	/**
+	 * Pieces the random sources are made of.
+	 */
+	private static final String[] PIECES = {
+		" ", "\t", "\r", "\n", "\r\n", "x", "Table", "_a1", "program", "while", "0", "42", "2147483647", "2147483648", "99999999999",
+		"'", "'c'", "''", "'\\n'", "'\\", "'ab'", "/", "//", "// comment\n", "*", "+", "-", "%", "=", "==", "!", "!=", "<", "<=", ">", ">=",
+		"(", ")", "[", "]", "{", "}", ";", ",", ".", "#", "$", "\"", "\u00e9", "\u0000"
+	};
+
+	/**
+	 * Sources that end inside a token.
+	 */
+	private static final String[] ENDINGS = {
+		"x '", "'", "x 'a", "''", "'\\", "x //", "x /", "2147483648", "\u00e9'"
+	};
+
+	/**
+	 * A way of creating a scanner for a source file.
+	 */
+	private interface Engine {
+		Scanner open(Path source) throws IOException;
+	}
+
+	/**
+	 * Names of the engines checked.
+	 */
+	private static final String[] NAMES = { "table", "parallel", "utf8" };
+
+	/**
+	 * Engines checked, in the order of {@code NAMES}.
+	 */
+	private static final Engine[] ENGINES = {
+		TableScanner::new,
+		// Small chunks, so even small sources are split.
+		source -> new ParallelScanner(source, ForkJoinPool.commonPool(), 16),
+		Utf8Scanner::new
+	};
+
+	/**
+	 * Main method of the engines tester.
+	 */
+	public static void main(String args[]) {
+		if (args.length == 0) {
+			System.out.println("Synopsis: java microjava.TestEngines <inputfileName> ...");
+			return;
+		}
+
+		int mismatches = 0;
+
+		for (String arg : args) {
+			Path source = Paths.get(arg);
+
+			try {
+				mismatches += compare(source, true);
+			} catch (IOException e) {
+				System.err.println("Cannot open input file " + source);
+			}
+		}
+
+		Random random = new Random(RANDOM_SOURCES);
+		int endingMismatches = 0;
+		int randomMismatches = 0;
+
+		try {
+			Path source = Files.createTempFile("random", ".mj");
+
+			try {
+				for (int i = 0; i < ENDINGS.length; i++) {
+					endingMismatches += compare(source, ENDINGS[i], "ending " + i);
+				}
+
+				for (int i = 0; i < RANDOM_SOURCES; i++) {
+					randomMismatches += compare(source, randomSource(random), "random source " + i);
+				}
+			} finally {
+				Files.delete(source);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot write random source");
+		}
+
+		System.out.println(ENDINGS.length + " endings: " + endingMismatches + " mismatches");
+		System.out.println(RANDOM_SOURCES + " random sources: " + randomMismatches + " mismatches");
+		System.out.println((mismatches + endingMismatches + randomMismatches) + " mismatches");
+	}
+
+	/**
+	 * Checks every engine on a source, written to a file first.
+	 *
+	 * @param file the file the source is written to
+	 * @param text the source
+	 * @param name the name of the source, printed with it if an engine
+	 *        finds other tokens
+	 * @return the number of engines that found other tokens
+	 * @throws IOException if the file cannot be written
+	 */
+	private static int compare(Path file, String text, String name) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+		int found = compare(file, false);
+		if (found > 0) {
+			System.out.println(name + ":");
+			System.out.println(text);
+		}
+
+		return found;
+	}
+
+	/**
+	 * Checks every engine on a source file.
+	 *
+	 * @param source the source file
+	 * @param verbose {@code true} to print the result of each engine, or
+	 *        {@code false} to print only the differences
+	 * @return the number of engines that found other tokens
+	 * @throws IOException if the file cannot be read
+	 */
+	private static int compare(Path source, boolean verbose) throws IOException {
+		int mismatches = 0;
+		List<String> expected = tokens(new Scanner(source));
+		List<String> expectedBuffer = tokenize(new Scanner(source));
+
+		for (int i = 0; i < ENGINES.length; i++) {
+			String difference = compare(expected, tokens(ENGINES[i].open(source)));
+			if (difference == null) {
+				difference = compare(expectedBuffer, tokenize(ENGINES[i].open(source)));
+			}
+
+			if (difference != null) {
+				System.out.println(source + ", " + NAMES[i] + ": " + difference);
+				mismatches++;
+			} else if (verbose) {
+				System.out.println(source + ", " + NAMES[i] + ": same tokens");
+			}
+		}
+
+		String text = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+		String difference;
+
+		try (Reader reader = Files.newBufferedReader(source)) {
+			difference = texts(text, new Scanner(reader));
+		}
+		if (difference == null) {
+			difference = texts(text, new Scanner(source));
+		}
+		if (difference == null) {
+			difference = texts(text, new Utf8Scanner(source));
+		}
+
+		if (difference != null) {
+			System.out.println(source + ", texts: " + difference);
+			mismatches++;
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * Checks that the text of each token is the part of the source it
+	 * spans, which must be inside the source.
+	 *
+	 * @param text the source
+	 * @param scanner the scanner of the source
+	 * @return the first token whose text is wrong, or {@code null} if
+	 *         there is none
+	 */
+	private static String texts(String text, Scanner scanner) {
+		Token t;
+
+		do {
+			t = scanner.next();
+
+			if (t.start + t.length > text.length()) {
+				return t + " ends past the source, at " + (t.start + t.length);
+			}
+			if (!t.text().toString().equals(text.substring(t.start, t.start + t.length))) {
+				return t + " has the text \"" + t.text() + "\"";
+			}
+		} while (t.kind != TokenType.EOF);
+
+		return null;
+	}
+
+	/**
+	 * @param random the random generator
+	 * @return a random source, made of random pieces
+	 */
+	private static String randomSource(Random random) {
+		StringBuilder text = new StringBuilder();
+
+		for (int i = random.nextInt(MAX_PIECES + 1); i > 0; i--) {
+			text.append(PIECES[random.nextInt(PIECES.length)]);
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Compares two token streams.
+	 *
+	 * @param expected the expected tokens
+	 * @param found the tokens found
+	 * @return the first difference, or {@code null} if they are the same
+	 */
+	private static String compare(List<String> expected, List<String> found) {
+		for (int i = 0; i < Math.max(expected.size(), found.size()); i++) {
+			String e = (i < expected.size()) ? expected.get(i) : "nothing";
+			String f = (i < found.size()) ? found.get(i) : "nothing";
+
+			if (!e.equals(f)) {
+				return "token " + i + " expected " + e + ", found " + f;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Scans a source with {@link Scanner#next()} until the end, recording
+	 * the comments.
+	 *
+	 * @param scanner the scanner of the source
+	 * @return the tokens found, then the comments, as text
+	 */
+	private static List<String> tokens(Scanner scanner) {
+		List<String> tokens = new ArrayList<>();
+		TriviaBuffer trivia = new TriviaBuffer();
+		scanner.setTrivia(trivia);
+		Token t;
+
+		do {
+			t = scanner.next();
+			tokens.add(t.toString());
+		} while (t.kind != TokenType.EOF);
+
+		for (int i = 0; i < trivia.size(); i++) {
+			tokens.add("comment at " + trivia.start(i) + "+" + trivia.length(i));
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Scans a source with {@link Scanner#tokenize(TokenBuffer)}.
+	 *
+	 * @param scanner the scanner of the source
+	 * @return the tokens found, as text
+	 */
+	private static List<String> tokenize(Scanner scanner) {
+		TokenBuffer buffer = new TokenBuffer();
+		scanner.tokenize(buffer);
+		return describe(buffer, scanner.names(), scanner.lines());
+	}
+
+	/**
+	 * Describes the tokens in a token buffer.
+	 *
+	 * @param buffer the tokens
+	 * @param names the names of the identifiers
+	 * @param lines the lines of the source
+	 * @return the tokens, as text
+	 */
+	private static List<String> describe(TokenBuffer buffer, NameTable names, LineIndex lines) {
+		List<String> tokens = new ArrayList<>();
+
+		for (int i = 0; i < buffer.size(); i++) {
+			int value = buffer.value(i);
+			tokens.add(String.format(
+				"%s at %d+%d (%d, %d) = %s",
+				buffer.kind(i),
+				buffer.start(i),
+				buffer.length(i),
+				lines.line(buffer.end(i)),
+				lines.column(buffer.end(i)),
+				(buffer.kind(i) == TokenType.IDENTIFIER) ? names.name(value) : value
+			));
+		}
+
+		return tokens;
+	}
+}
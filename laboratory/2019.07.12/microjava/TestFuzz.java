@@ -0,0 +1,291 @@
+/*  MicroJava Parser Fuzzer
+ *  =======================
+ *  Place this file in a subdirectory microjava
+ *  Compile with
+ *    javac microjava\*.java
+ *  Run with
+ *    java microjava.TestFuzz <inputFileName> ...
+ */
+package microjava;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that parses broken mutants of source files with each parser, and
+ * checks that every parse ends without an exception within a time linear
+ * in the length of the mutant. The mutants have parts of the source cut,
+ * removed, repeated or swapped, random characters inserted, or long runs
+ * of tokens that open statements, expressions or blocks. A mutant that
+ * fails is written next to its source file, to parse it again.
+ */
+public class TestFuzz {
+	/**
+	 * Number of mutants of each source file.
+	 */
+	private static final int MUTANTS = 200;
+
+	/**
+	 * Time allowed for any parse, in milliseconds.
+	 */
+	private static final long BASE_MILLIS = 500;
+
+	/**
+	 * Time allowed for each character of the source, in nanoseconds.
+	 */
+	private static final long NANOS_PER_CHAR = 2000;
+
+	/**
+	 * Longest run of repeated tokens inserted, as a power of two.
+	 */
+	private static final int MAX_RUN_BITS = 16;
+
+	/**
+	 * Names of the parsers run on each mutant.
+	 */
+	private static final String[] ENGINES = {
+		"Parser", "parallel Parser", "pipelined Parser", "lazy Parser", "lazy pipelined Parser", "TableParser", "IncrementalParser"
+	};
+
+	/**
+	 * Text repeated in the runs of tokens.
+	 */
+	private static final String[] RUNS = {
+		"{ ", "( ", "[", "-", "x.", "if (x > y) ", "while (x > y) ", "else ", "x = ", "print(", "} ", ") ", "void m() ", "'", "\"", "/*"
+	};
+
+	/**
+	 * Characters inserted at random.
+	 */
+	private static final String CHARACTERS = "{}()[];,.=<>!+-*/%'\"\\ \t\r\nx0aZ_\u00e9\u0000";
+
+	/**
+	 * Pool where the method declarations are parsed in parallel.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	/**
+	 * Main method of the parser fuzzer.
+	 */
+	public static void main(String args[]) {
+		if (args.length == 0) {
+			System.out.println("Synopsis: java microjava.TestFuzz <inputfileName> ...");
+			return;
+		}
+
+		int mutants = 0;
+		int failures = 0;
+		double slowest = 0;
+		String slowestName = "";
+
+		for (String arg : args) {
+			String text;
+
+			try {
+				text = new String(Files.readAllBytes(Paths.get(arg)), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				System.err.println("Cannot open input file " + arg);
+				continue;
+			}
+
+			Random random = new Random(arg.hashCode());
+
+			for (int i = 0; i < MUTANTS; i++) {
+				String source = mutate(text, random);
+				long limit = BASE_MILLIS * 1000000 + NANOS_PER_CHAR * source.length();
+				mutants++;
+
+				for (int engine = 0; engine < ENGINES.length; engine++) {
+					Run run = new Run(engine, text, source);
+					Thread thread = new Thread(run);
+					// A parse that never ends must not keep the tester running.
+					thread.setDaemon(true);
+					thread.start();
+
+					try {
+						thread.join(limit / 1000000 + 1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					String failure = null;
+					if (thread.isAlive()) {
+						failure = "does not end within " + limit / 1000000 + " ms";
+					} else if (run.thrown != null) {
+						failure = "throws " + run.thrown;
+					} else if (run.nanos > limit) {
+						failure = "takes " + run.nanos / 1000000 + " ms, over " + limit / 1000000 + " ms";
+					}
+
+					double share = (double) run.nanos / limit;
+					if (failure == null && share > slowest) {
+						slowest = share;
+						slowestName = arg + ", mutant " + i + ", " + ENGINES[engine];
+					}
+
+					if (failure != null) {
+						failures++;
+						String name = arg + ".mutant" + i + ".mj";
+						System.out.println(arg + ", mutant " + i + ", " + source.length() + " characters: " + ENGINES[engine] + " " + failure + ", written to " + name);
+
+						try {
+							Files.write(Paths.get(name), source.getBytes(StandardCharsets.UTF_8));
+						} catch (IOException e) {
+							System.err.println("Cannot write output file " + name);
+						}
+
+						if (thread.isAlive()) {
+							// The parse cannot be stopped, and would slow down the next ones.
+							System.out.println(mutants + " mutants, " + failures + " failures");
+							System.exit(1);
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println(mutants + " mutants, " + failures + " failures, slowest " + String.format("%.1f", 100 * slowest) + "% of its time limit (" + slowestName + ")");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Parse of a mutant by one parser, run in a thread of its own.
+	 */
+	private static class Run implements Runnable {
+		/**
+		 * Index of the parser in {@link #ENGINES}.
+		 */
+		private final int engine;
+		/**
+		 * Source file the mutant comes from.
+		 */
+		private final String original;
+		/**
+		 * Mutant parsed.
+		 */
+		private final String source;
+		/**
+		 * Time taken by the parse, in nanoseconds.
+		 */
+		private volatile long nanos;
+		/**
+		 * Exception thrown by the parse, or {@code null}.
+		 */
+		private volatile Throwable thrown;
+
+		/**
+		 * @param engine the index of the parser in {@link #ENGINES}
+		 * @param original the source file the mutant comes from
+		 * @param source the mutant
+		 */
+		Run(int engine, String original, String source) {
+			this.engine = engine;
+			this.original = original;
+			this.source = source;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+
+			try {
+				parse();
+			} catch (Throwable e) {
+				thrown = e;
+			}
+
+			nanos = System.nanoTime() - start;
+		}
+
+		/**
+		 * Parses the mutant.
+		 */
+		private void parse() {
+			char[] chars = source.toCharArray();
+			Scanner scanner = new Scanner(chars, chars.length, new NameTable());
+
+			switch (engine) {
+				case 0:
+					new Parser(scanner).parse();
+					break;
+				case 1:
+					Parser parallel = new Parser(scanner);
+					parallel.setParallel(POOL, 1);
+					parallel.parse();
+					break;
+				case 2:
+					Parser pipelined = new Parser(scanner);
+					pipelined.setPipelined(true);
+					pipelined.parse();
+					break;
+				case 3:
+				case 4:
+					Parser lazy = new Parser(scanner);
+					lazy.setLazy(true);
+					lazy.setPipelined(engine == 4);
+					lazy.parse();
+
+					SyntaxTree tree = lazy.tree();
+					for (int node = tree.firstChild(tree.root()); node != SyntaxTree.NONE; node = tree.nextSibling(node)) {
+						if (tree.kind(node) == NodeKind.METHOD_DECL) {
+							lazy.parseBody(node);
+						}
+					}
+					break;
+				case 5:
+					new TableParser(scanner).parse();
+					break;
+				default:
+					// Edits the source file into the mutant.
+					IncrementalParser incremental = new IncrementalParser(original);
+					incremental.edit(0, original.length(), source);
+			}
+		}
+	}
+
+	/**
+	 * Breaks a source: cuts it, removes, repeats or swaps a part of it,
+	 * inserts random characters, or inserts a long run of a token.
+	 *
+	 * @param text the source
+	 * @param random the random generator
+	 * @return the mutant
+	 */
+	private static String mutate(String text, Random random) {
+		int length = text.length();
+		int start = random.nextInt(length + 1);
+		int end = start + random.nextInt(length - start + 1);
+
+		switch (random.nextInt(6)) {
+			case 0:
+				return text.substring(0, start);
+			case 1:
+				return text.substring(0, start) + text.substring(end);
+			case 2:
+				return text.substring(0, end) + text.substring(start);
+			case 3:
+				int other = end + random.nextInt(length - end + 1);
+				return text.substring(0, start) + text.substring(end, other) + text.substring(start, end) + text.substring(other);
+			case 4:
+				StringBuilder characters = new StringBuilder(text.substring(0, start));
+				for (int i = 1 + random.nextInt(64); i > 0; i--) {
+					characters.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+				}
+				return characters.append(text.substring(start)).toString();
+			default:
+				StringBuilder run = new StringBuilder(text.substring(0, start));
+				String token = RUNS[random.nextInt(RUNS.length)];
+				for (int i = 1 << random.nextInt(MAX_RUN_BITS + 1); i > 0; i--) {
+					run.append(token);
+				}
+				return run.append(text.substring(start)).toString();
+		}
+	}
+}
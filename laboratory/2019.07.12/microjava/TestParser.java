@@ -8,9 +8,8 @@
  */
 package microjava;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 /**
  * Class that tests the parser using a source file.
@@ -29,10 +28,11 @@ public class TestParser {
 		String source = args[0];
 
 		try {
-			Scanner scanner = new Scanner(new InputStreamReader(new FileInputStream(source)));
+			Scanner scanner = new Scanner(Paths.get(source));
 			Parser parser = new Parser(scanner);
 
 			parser.parse();
+			scanner.diagnostics().print(System.err);
 			System.out.println(parser.errors + " errors detected");
 		} catch (IOException e) {
 			System.err.println("Cannot open input file " + source);
@@ -0,0 +1,399 @@
+/*  MicroJava Parser Engines Tester
+ *  ===============================
+ *  Place this file in a subdirectory microjava
+ *  Compile with
+ *    javac microjava\*.java
+ *  Run with
+ *    java microjava.TestParsers <inputFileName> ...
+ */
+package microjava;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class that checks that {@link TableParser} accepts and rejects the same
+ * sources as {@link Parser}, and that {@link Parser} builds the same tree
+ * and reports the same errors when it scans the tokens in another thread
+ * or parses the method declarations in parallel, or, for sources without
+ * errors, when it parses the bodies of the methods lazily, also while
+ * scanning in another thread. It also checks that {@link IncrementalParser} builds
+ * the same tree when a source file is edited into each mutant and back.
+ * The sources are the given source files and mutants of them with tokens
+ * removed, repeated, swapped or inserted.
+ */
+public class TestParsers {
+	/**
+	 * Number of mutants of each source file.
+	 */
+	private static final int MUTANTS = 500;
+
+	/**
+	 * Number of copies of a source file in a source also parsed while
+	 * scanning in another thread, which is still scanning when the parser
+	 * stops.
+	 */
+	private static final int COPIES = 200;
+
+	/**
+	 * Spellings inserted into the mutants, besides the fixed ones.
+	 */
+	private static final String[] WORDS = { "x", "Table", "42", "'c'" };
+
+	/**
+	 * Pool where the method declarations are parsed in parallel.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	/**
+	 * Main method of the parser engines tester.
+	 */
+	public static void main(String args[]) {
+		if (args.length == 0) {
+			System.out.println("Synopsis: java microjava.TestParsers <inputfileName> ...");
+			return;
+		}
+
+		int sources = 0;
+		int accepted = 0;
+		int mismatches = 0;
+
+		for (String arg : args) {
+			String text;
+
+			try {
+				text = new String(Files.readAllBytes(Paths.get(arg)), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				System.err.println("Cannot open input file " + arg);
+				continue;
+			}
+
+			Random random = new Random(arg.hashCode());
+			IncrementalParser incremental = new IncrementalParser(text);
+			String original = null;
+
+			for (int i = 0; i <= MUTANTS; i++) {
+				// The first source is the file itself.
+				String source = (i == 0) ? text : mutate(text, random);
+				boolean parser = accepts(source, false);
+				boolean table = accepts(source, true);
+
+				sources++;
+				if (parser) accepted++;
+
+				if (parser != table) {
+					mismatches++;
+					System.out.println(arg + ", mutant " + i + ": Parser " + verdict(parser) + ", TableParser " + verdict(table));
+					System.out.println(source);
+				}
+
+				String sequential = parse(source, false, false);
+				String parallel = parse(source, true, false);
+				String pipelined = parse(source, false, true);
+
+				if (!sequential.equals(parallel)) {
+					mismatches++;
+					System.out.println(arg + ", mutant " + i + ": parallel parse differs");
+					System.out.println(source);
+					System.out.println(sequential);
+					System.out.println(parallel);
+				}
+
+				if (!sequential.equals(pipelined)) {
+					mismatches++;
+					System.out.println(arg + ", mutant " + i + ": pipelined parse differs");
+					System.out.println(source);
+					System.out.println(sequential);
+					System.out.println(pipelined);
+				}
+
+				String tree = parseTree(source);
+				if (i == 0) {
+					original = tree;
+				}
+
+				// Edits the file into the mutant, then back.
+				for (int back = 0; back < 2; back++) {
+					String expected = (back == 0) ? tree : original;
+					edit(incremental, (back == 0) ? source : text);
+					String actual = incremental.tree().toString() + incremental.errors() + " errors\n";
+
+					if (!expected.equals(actual)) {
+						mismatches++;
+						System.out.println(arg + ", mutant " + i + ": incremental parse differs" + ((back == 0) ? "" : " after the edit back"));
+						System.out.println(source);
+						System.out.println(expected);
+						System.out.println(actual);
+					}
+				}
+
+				if (parser) {
+					for (int mode = 0; mode < 2; mode++) {
+						String lazy = parseLazily(source, mode == 1);
+
+						if (!sequential.equals(lazy)) {
+							mismatches++;
+							System.out.println(arg + ", mutant " + i + ": lazy" + ((mode == 0) ? "" : " pipelined") + " parse differs");
+							System.out.println(source);
+							System.out.println(sequential);
+							System.out.println(lazy);
+						}
+					}
+				}
+			}
+
+			StringBuilder copies = new StringBuilder();
+			for (int i = 0; i < COPIES; i++) {
+				copies.append(text);
+			}
+
+			if (!parse(copies.toString(), false, false).equals(parse(copies.toString(), false, true))) {
+				mismatches++;
+				System.out.println(arg + ", " + COPIES + " copies: pipelined parse differs");
+			}
+
+			// The lazy parse skips bodies past the tokens the scanner has published.
+			String methods = repeatMethods(text);
+			if (methods != null && !parse(methods, false, false).equals(parseLazily(methods, true))) {
+				mismatches++;
+				System.out.println(arg + ", " + COPIES + " copies of the methods: lazy pipelined parse differs");
+			}
+		}
+
+		System.out.println(sources + " sources, " + accepted + " accepted, " + mismatches + " mismatches");
+	}
+
+	/**
+	 * Parses a source.
+	 *
+	 * @param source the source
+	 * @param table {@code true} to parse with {@link TableParser}, or
+	 *        {@code false} to parse with {@link Parser}
+	 * @return {@code true} if the source has no syntax error
+	 */
+	private static boolean accepts(String source, boolean table) {
+		char[] chars = source.toCharArray();
+		Scanner scanner = new Scanner(chars, chars.length, new NameTable());
+
+		if (table) {
+			TableParser parser = new TableParser(scanner);
+			parser.parse();
+			return parser.errors == 0;
+		} else {
+			Parser parser = new Parser(scanner);
+			parser.parse();
+			return parser.errors == 0;
+		}
+	}
+
+	/**
+	 * Parses a source with {@link Parser}, each method declaration in a
+	 * task of its own if in parallel.
+	 *
+	 * @param source the source
+	 * @param parallel {@code true} to parse the method declarations in
+	 *        parallel
+	 * @param pipelined {@code true} to scan the tokens in another thread
+	 * @return the syntax tree and the errors
+	 */
+	private static String parse(String source, boolean parallel, boolean pipelined) {
+		char[] chars = source.toCharArray();
+		Scanner scanner = new Scanner(chars, chars.length, new NameTable());
+		Parser parser = new Parser(scanner);
+		if (parallel) {
+			parser.setParallel(POOL, 1);
+		}
+		parser.setPipelined(pipelined);
+		parser.parse();
+		return describe(scanner, parser);
+	}
+
+	/**
+	 * Parses a source with {@link Parser}, skipping the bodies of the
+	 * methods, then parses each body.
+	 *
+	 * @param source the source
+	 * @param pipelined {@code true} to scan the tokens in another thread
+	 * @return the syntax tree and the errors
+	 */
+	private static String parseLazily(String source, boolean pipelined) {
+		char[] chars = source.toCharArray();
+		Scanner scanner = new Scanner(chars, chars.length, new NameTable());
+		Parser parser = new Parser(scanner);
+		parser.setLazy(true);
+		parser.setPipelined(pipelined);
+		parser.parse();
+
+		SyntaxTree tree = parser.tree();
+		for (int node = tree.firstChild(tree.root()); node != SyntaxTree.NONE; node = tree.nextSibling(node)) {
+			if (tree.kind(node) == NodeKind.METHOD_DECL) {
+				parser.parseBody(node);
+			}
+		}
+
+		return describe(scanner, parser);
+	}
+
+	/**
+	 * Parses a source with {@link Parser}.
+	 *
+	 * @param source the source
+	 * @return the syntax tree and the number of errors
+	 */
+	private static String parseTree(String source) {
+		char[] chars = source.toCharArray();
+		Parser parser = new Parser(new Scanner(chars, chars.length, new NameTable()));
+		parser.parse();
+		return parser.tree().toString() + parser.errors + " errors\n";
+	}
+
+	/**
+	 * Repeats the method declarations of a source without errors.
+	 *
+	 * @param source the source
+	 * @return the source with {@code COPIES} copies of its method
+	 *         declarations, or {@code null} if it has errors or none
+	 */
+	private static String repeatMethods(String source) {
+		char[] chars = source.toCharArray();
+		Parser parser = new Parser(new Scanner(chars, chars.length, new NameTable()));
+		parser.parse();
+		SyntaxTree tree = parser.tree();
+		TokenBuffer tokens = tree.tokens();
+		int method = tree.firstChild(tree.root());
+
+		while (method != SyntaxTree.NONE && tree.kind(method) != NodeKind.METHOD_DECL) {
+			method = tree.nextSibling(method);
+		}
+
+		if (parser.errors > 0 || method == SyntaxTree.NONE) {
+			return null;
+		}
+
+		// The first token is the smallest one on the way down the first children.
+		int first = tree.token(method);
+		for (int child = tree.firstChild(method); child != SyntaxTree.NONE; child = tree.firstChild(child)) {
+			first = Math.min(first, tree.token(child));
+		}
+
+		// The methods end before the "}" of the Program, the last token before EOF.
+		int start = tokens.start(first);
+		int end = tokens.start(tokens.size() - 2);
+		StringBuilder text = new StringBuilder(source.substring(0, end));
+
+		for (int i = 1; i < COPIES; i++) {
+			text.append(source, start, end);
+		}
+
+		return text.append(source.substring(end)).toString();
+	}
+
+	/**
+	 * Edits the source of an incremental parser into another source, by
+	 * replacing the part between their common prefix and suffix.
+	 *
+	 * @param parser the incremental parser
+	 * @param source the other source
+	 */
+	private static void edit(IncrementalParser parser, String source) {
+		String text = parser.text();
+		int prefix = 0;
+		int suffix = 0;
+		int common = Math.min(text.length(), source.length());
+
+		while (prefix < common && text.charAt(prefix) == source.charAt(prefix)) {
+			prefix++;
+		}
+		while (suffix < common - prefix && text.charAt(text.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+			suffix++;
+		}
+
+		parser.edit(prefix, text.length() - prefix - suffix, source.substring(prefix, source.length() - suffix));
+	}
+
+	/**
+	 * @param scanner the scanner of a source
+	 * @param parser the parser of the source
+	 * @return the syntax tree and the errors
+	 */
+	private static String describe(Scanner scanner, Parser parser) {
+		StringBuilder text = new StringBuilder(parser.tree().toString());
+		try {
+			scanner.diagnostics().render(text);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+
+		return text.append(parser.errors).append(" errors\n").toString();
+	}
+
+	/**
+	 * @param accepted if a source was accepted
+	 * @return the verdict, as text
+	 */
+	private static String verdict(boolean accepted) {
+		return accepted ? "accepts" : "rejects";
+	}
+
+	/**
+	 * Changes a token of a source: removes it, repeats it, swaps it with
+	 * the next one, or inserts another token before it.
+	 *
+	 * @param text the source
+	 * @param random the random generator
+	 * @return the mutant
+	 */
+	private static String mutate(String text, Random random) {
+		char[] chars = text.toCharArray();
+		TokenBuffer tokens = new TokenBuffer();
+		new Scanner(chars, chars.length, new NameTable()).tokenize(tokens);
+
+		// The EOF token is never changed.
+		if (tokens.size() == 1) {
+			return text;
+		}
+
+		int i = random.nextInt(tokens.size() - 1);
+		int start = tokens.start(i);
+		int end = tokens.end(i);
+		String token = text.substring(start, end);
+
+		switch (random.nextInt(4)) {
+			case 0:
+				return text.substring(0, start) + text.substring(end);
+			case 1:
+				return text.substring(0, end) + " " + token + text.substring(end);
+			case 2:
+				if (i + 1 < tokens.size() - 1) {
+					int nextEnd = tokens.end(i + 1);
+					String next = text.substring(tokens.start(i + 1), nextEnd);
+					return text.substring(0, start) + next + " " + token + text.substring(nextEnd);
+				}
+				return text.substring(0, start) + text.substring(end);
+			default:
+				return text.substring(0, start) + spelling(random) + " " + text.substring(start);
+		}
+	}
+
+	/**
+	 * @param random the random generator
+	 * @return the spelling of a random token
+	 */
+	private static String spelling(Random random) {
+		TokenType[] types = TokenType.values();
+
+		while (true) {
+			int i = random.nextInt(types.length + WORDS.length);
+
+			if (i >= types.length) {
+				return WORDS[i - types.length];
+			} else if (types[i].lexeme() != null) {
+				return types[i].lexeme();
+			}
+		}
+	}
+}
@@ -8,9 +8,8 @@
  */
 package microjava;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 /**
  * Class that tests the output tokens of the scanner using a source file.
@@ -29,11 +28,12 @@ public class TestScanner {
 		String source = args[0];
 
 		try {
-			Scanner scan = new Scanner(new InputStreamReader(new FileInputStream(source)));
+			Scanner scan = new Scanner(Paths.get(source));
 			do {
 				t = scan.next();
 				System.out.println(t);
 			} while (t.kind != TokenType.EOF);
+			scan.diagnostics().print(System.err);
 		} catch (IOException e) {
 			System.err.println("Cannot open input file " + source);
 		}
@@ -1,5 +1,7 @@
 package microjava;
 
+import java.nio.CharBuffer;
+
 /**
  * A program token.
  */
@@ -9,31 +11,70 @@ public class Token {
 	 */
 	final TokenType kind;
 	/**
-   * Token line.
-   */
-	final int line;		
-	/**
-   * Token column.
-   */
-	final int column;		
-	/**
    * Token value.	
    */
 	final Object value;
+	/**
+	 * Source where the token was found.
+	 */
+	private final char[] source;
+	/**
+	 * Token position from start of source file.
+	 */
+	final int start;
+	/**
+	 * Token length.
+	 */
+	final int length;
+	/**
+	 * Lines of the source, which give the line and column of the token.
+	 */
+	private final LineIndex lines;
 
 	/**
 	 * Creates a token.
 	 * 
 	 * @param kind the type of the token
-	 * @param line the line of the token
-	 * @param column the column of the token
 	 * @param value the value of the token if is literal
+	 * @param source the source where the token was found
+	 * @param start the position of the token in the source
+	 * @param length the length of the token
+	 * @param lines the lines of the source
 	 */
-	public Token(TokenType kind, int line, int column, Object value) {
+	public Token(TokenType kind, Object value, char[] source, int start, int length, LineIndex lines) {
 		this.kind = kind;
-		this.line = line;
-		this.column = column;
 		this.value = value;
+		this.source = source;
+		this.start = start;
+		this.length = length;
+		this.lines = lines;
+	}
+
+	/**
+	 * Returns the line of the token, which is the line of the character
+	 * after it, as the scanner has always reported it.
+	 * 
+	 * @return the line of the token
+	 */
+	public int line() {
+		return lines.line(start + length);
+	}
+
+	/**
+	 * @return the column of the token, also at the character after it
+	 */
+	public int column() {
+		return lines.column(start + length);
+	}
+
+	/**
+	 * Returns the text of the token as a view of the source, so it's only
+	 * copied if the caller converts it into a string.
+	 * 
+	 * @return the text of the token
+	 */
+	public CharSequence text() {
+		return CharBuffer.wrap(source, start, length);
 	}
 
 	@Override
@@ -41,8 +82,8 @@ public class Token {
 		return String.format(
 			"Token { kind = %s; line = %d; col = %d%s }",
 			kind,
-			line,
-			column,
+			line(),
+			column(),
 			(value != null) ? "; value = " + value.toString() : ""
 		);
 	}
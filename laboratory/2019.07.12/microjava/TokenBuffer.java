@@ -0,0 +1,221 @@
+package microjava;
+
+import java.util.Arrays;
+
+/**
+ * A growable sequence of tokens, stored as parallel arrays of primitives.
+ *
+ * Filling the buffer does not create an object per token, and clearing it
+ * keeps the arrays, so the same buffer can be reused for many sources.
+ */
+public class TokenBuffer {
+	/**
+	 * Token types, indexed by ordinal.
+	 */
+	private static final TokenType[] TYPES = TokenType.values();
+
+	/**
+	 * Token kind ordinals.
+	 */
+	private byte[] kinds;
+	/**
+	 * Token start positions from start of source file.
+	 */
+	private int[] starts;
+	/**
+	 * Token lengths.
+	 */
+	private int[] lengths;
+	/**
+	 * Token values.
+	 * For identifiers it is an id in the name table of the scanner, for
+	 * numbers the number itself, and for characters the character code
+	 * (-1 if malformed).
+	 */
+	private int[] values;
+	/**
+	 * Number of tokens in the buffer.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty token buffer.
+	 */
+	public TokenBuffer() {
+		this(1024);
+	}
+
+	/**
+	 * Creates an empty token buffer.
+	 *
+	 * @param capacity the initial number of tokens that fit in the buffer
+	 */
+	public TokenBuffer(int capacity) {
+		capacity = Math.max(capacity, 16);
+		kinds = new byte[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		values = new int[capacity];
+	}
+
+	/**
+	 * Removes all the tokens, keeping the allocated space.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return the number of tokens in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i the token index
+	 * @return the type of the token
+	 */
+	public TokenType kind(int i) {
+		return TYPES[kinds[i]];
+	}
+
+	/**
+	 * @param i the token index
+	 * @return the position of the token from start of source file
+	 */
+	public int start(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @param i the token index
+	 * @return the number of characters of the token
+	 */
+	public int length(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * @param i the token index
+	 * @return the position after the token, where its line and column
+	 *         are found by a {@link LineIndex}
+	 */
+	public int end(int i) {
+		return starts[i] + lengths[i];
+	}
+
+	/**
+	 * @param i the token index
+	 * @return the value of the token
+	 */
+	public int value(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Appends a token.
+	 *
+	 * @param kind the type of the token
+	 * @param start the position of the token
+	 * @param length the number of characters of the token
+	 * @param value the value of the token
+	 */
+	void add(TokenType kind, int start, int length, int value) {
+		if (size == kinds.length) {
+			grow(size + 1);
+		}
+
+		kinds[size] = (byte) kind.ordinal();
+		starts[size] = start;
+		lengths[size] = length;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Copies tokens to another buffer, over the tokens it has at that
+	 * position, growing it if needed.
+	 *
+	 * @param from the first token copied
+	 * @param count the number of tokens copied
+	 * @param to the buffer where the tokens are copied
+	 * @param at the position of the first token in {@code to}
+	 */
+	void copy(int from, int count, TokenBuffer to, int at) {
+		if (at + count > to.kinds.length) {
+			to.grow(at + count);
+		}
+
+		System.arraycopy(kinds, from, to.kinds, at, count);
+		System.arraycopy(starts, from, to.starts, at, count);
+		System.arraycopy(lengths, from, to.lengths, at, count);
+		System.arraycopy(values, from, to.values, at, count);
+		to.size = Math.max(to.size, at + count);
+	}
+
+	/**
+	 * Appends the tokens of another buffer from an index on, changing the
+	 * ids of their identifiers.
+	 *
+	 * @param from the buffer with the tokens
+	 * @param first the index of the first token appended
+	 * @param ids the new id of each identifier id, or {@code null} to keep them
+	 */
+	void append(TokenBuffer from, int first, int[] ids) {
+		int at = size;
+		from.copy(first, from.size - first, this, at);
+
+		if (ids != null) {
+			for (int i = at; i < size; i++) {
+				if (kinds[i] == TokenType.IDENTIFIER.ordinal()) {
+					values[i] = ids[values[i]];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces a range of tokens with the tokens of another buffer, and
+	 * moves the tokens after the range by a number of characters.
+	 *
+	 * @param from the first token replaced
+	 * @param to the token after the last one replaced
+	 * @param with the buffer with the new tokens
+	 * @param startDelta the change of position of the following tokens
+	 */
+	void splice(int from, int to, TokenBuffer with, int startDelta) {
+		int count = with.size;
+		int tail = size - to;
+		int newSize = from + count + tail;
+
+		if (newSize > kinds.length) {
+			grow(newSize);
+		}
+
+		System.arraycopy(kinds, to, kinds, from + count, tail);
+		System.arraycopy(starts, to, starts, from + count, tail);
+		System.arraycopy(lengths, to, lengths, from + count, tail);
+		System.arraycopy(values, to, values, from + count, tail);
+
+		for (int i = from + count; i < newSize; i++) {
+			starts[i] += startDelta;
+		}
+
+		with.copy(0, count, this, from);
+		size = newSize;
+	}
+
+	/**
+	 * Enlarges the arrays, at least doubling their size.
+	 *
+	 * @param capacity the number of tokens that must fit in the buffer
+	 */
+	private void grow(int capacity) {
+		capacity = Math.max(capacity, kinds.length * 2);
+		kinds = Arrays.copyOf(kinds, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+}
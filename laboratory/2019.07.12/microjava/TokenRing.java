@@ -0,0 +1,137 @@
+package microjava;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of tokens between one scanner thread, which publishes
+ * them in batches, and one parser thread, which drains them.
+ *
+ * The tokens are kept in a circular {@link TokenBuffer}. Each side only
+ * writes its own counter, so no lock is needed: the scanner waits while
+ * the ring is full, which keeps it at most one ring ahead of the parser,
+ * and the parser waits while the ring is empty.
+ */
+final class TokenRing {
+	/**
+	 * Number of tokens scanned before they are published.
+	 */
+	static final int BATCH = 256;
+
+	/**
+	 * Number of spins before a waiting thread yields.
+	 */
+	private static final int SPINS = 100;
+
+	/**
+	 * Circular storage of the tokens.
+	 */
+	private final TokenBuffer storage;
+	/**
+	 * Number of tokens that fit in the ring, a power of two.
+	 */
+	private final int capacity;
+	/**
+	 * Number of tokens drained, written only by the parser.
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Number of tokens published, written only by the scanner.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * If the parser stopped draining tokens.
+	 */
+	private volatile boolean closed;
+	/**
+	 * If the scanner stopped publishing tokens.
+	 */
+	private volatile boolean finished;
+
+	/**
+	 * Creates an empty ring.
+	 *
+	 * @param batches the number of batches that fit in the ring
+	 */
+	TokenRing(int batches) {
+		capacity = Integer.highestOneBit(Math.max(batches, 2) * BATCH - 1) << 1;
+		storage = new TokenBuffer(capacity);
+	}
+
+	/**
+	 * Publishes a batch of tokens, waiting while there's no room for it.
+	 * Called only by the scanner thread.
+	 *
+	 * @param batch the tokens, at most {@code BATCH} of them
+	 * @return {@code false} if the ring was closed by the parser
+	 */
+	boolean publish(TokenBuffer batch) {
+		int count = batch.size();
+		long published = tail.get();
+
+		for (int spins = 0; published + count - head.get() > capacity; spins++) {
+			if (closed) return false;
+			waitFor(spins);
+		}
+
+		int at = (int) published & (capacity - 1);
+		int first = Math.min(count, capacity - at);
+		batch.copy(0, first, storage, at);
+		batch.copy(first, count - first, storage, 0);
+		tail.lazySet(published + count);
+		return true;
+	}
+
+	/**
+	 * Moves all the published tokens to the end of a buffer, waiting while
+	 * there's none. Called only by the parser thread.
+	 *
+	 * @param tokens the buffer where the tokens are appended
+	 * @throws IllegalStateException if the scanner stopped before the EOF token
+	 */
+	void drainTo(TokenBuffer tokens) {
+		long drained = head.get();
+		long published;
+
+		for (int spins = 0; (published = tail.get()) == drained; spins++) {
+			if (finished && tail.get() == drained) {
+				throw new IllegalStateException("Scanner stopped before the end of file");
+			}
+
+			waitFor(spins);
+		}
+
+		int count = (int) (published - drained);
+		int at = (int) drained & (capacity - 1);
+		int first = Math.min(count, capacity - at);
+		storage.copy(at, first, tokens, tokens.size());
+		storage.copy(0, count - first, tokens, tokens.size());
+		head.lazySet(published);
+	}
+
+	/**
+	 * Tells the parser that no more tokens will be published.
+	 */
+	void finish() {
+		finished = true;
+	}
+
+	/**
+	 * Stops the scanner from publishing more tokens.
+	 */
+	void close() {
+		closed = true;
+	}
+
+	/**
+	 * Waits a little for the other thread.
+	 *
+	 * @param spins the number of times the thread waited already
+	 */
+	private static void waitFor(int spins) {
+		if (spins < SPINS) {
+			Thread.onSpinWait();
+		} else {
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package microjava;
+
+import static microjava.TokenType.*;
+
+/**
+ * Cursor over the tokens of a source, with lookahead of any number of
+ * tokens and marks to go back to.
+ *
+ * The tokens are kept in a {@link TokenBuffer}, which is filled before
+ * parsing or, when the scanner runs in another thread, drained from a
+ * {@link TokenRing} as the lookahead needs them. The tokens taken from
+ * the ring are kept until the buffer is cleared, since the syntax tree
+ * refers to them by index. Clearing the buffer keeps its arrays, so a
+ * stream reused for many sources allocates nothing once the buffer is
+ * large enough.
+ */
+public class TokenStream {
+	/**
+	 * Tokens read so far.
+	 */
+	private final TokenBuffer tokens;
+	/**
+	 * Ring with the tokens still being scanned, or {@code null} if all of
+	 * them are in {@code tokens}.
+	 */
+	private TokenRing ring;
+	/**
+	 * Index of the current token in {@code tokens}, or -1 before the first.
+	 */
+	private int cursor = -1;
+
+	/**
+	 * Creates a stream over a token buffer.
+	 *
+	 * @param tokens the buffer of the tokens
+	 */
+	public TokenStream(TokenBuffer tokens) {
+		this.tokens = tokens;
+	}
+
+	/**
+	 * @return the buffer of the tokens read so far
+	 */
+	public TokenBuffer tokens() {
+		return tokens;
+	}
+
+	/**
+	 * Starts over, before the first of the tokens in the buffer.
+	 */
+	public void rewind() {
+		cursor = -1;
+	}
+
+	/**
+	 * Starts over with an empty buffer, which is filled from a ring while
+	 * the tokens are read.
+	 *
+	 * @param ring the ring with the tokens, or {@code null} if the buffer
+	 *        is filled before reading
+	 */
+	void start(TokenRing ring) {
+		tokens.clear();
+		this.ring = ring;
+		cursor = -1;
+	}
+
+	/**
+	 * Takes all the remaining tokens from the ring, up to the EOF token,
+	 * without moving.
+	 */
+	void drain() {
+		while (fill()) {
+			// Takes more tokens until the EOF token.
+		}
+	}
+
+	/**
+	 * Stops taking tokens from the ring. The tokens already taken can
+	 * still be read.
+	 */
+	void detach() {
+		ring = null;
+	}
+
+	/**
+	 * Moves to the next token. The EOF token is the last one, and the
+	 * stream stays there.
+	 *
+	 * @return the type of the new current token
+	 */
+	public TokenType next() {
+		if (cursor < tokens.size() - 1 || fill()) {
+			cursor++;
+		}
+
+		return tokens.kind(cursor);
+	}
+
+	/**
+	 * Looks at a token after the current one, without moving.
+	 *
+	 * @param k the distance from the current token, 0 being the current one
+	 * @return the type of the token, or EOF if the source ends before
+	 */
+	public TokenType peek(int k) {
+		int index = cursor + k;
+
+		while (index >= tokens.size() && fill()) {
+			// Takes more tokens until the one asked for.
+		}
+
+		return tokens.kind(Math.min(index, tokens.size() - 1));
+	}
+
+	/**
+	 * @return the index of the current token in {@link #tokens()}
+	 */
+	public int index() {
+		return cursor;
+	}
+
+	/**
+	 * Marks the current position, to come back to it with {@link #reset(int)}.
+	 *
+	 * @return the mark
+	 */
+	public int mark() {
+		return cursor;
+	}
+
+	/**
+	 * Goes back to a marked position.
+	 *
+	 * @param mark the mark returned by {@link #mark()}
+	 */
+	public void reset(int mark) {
+		cursor = mark;
+	}
+
+	/**
+	 * Takes the published tokens from the ring, if the EOF token was not
+	 * taken yet.
+	 *
+	 * @return {@code true} if more tokens were taken
+	 */
+	private boolean fill() {
+		int size = tokens.size();
+
+		if (ring == null || (size > 0 && tokens.kind(size - 1) == EOF)) {
+			return false;
+		}
+
+		ring.drainTo(tokens);
+		return true;
+	}
+}
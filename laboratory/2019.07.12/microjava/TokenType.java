@@ -17,18 +17,40 @@ enum TokenType {
   /**
    * Operators and special characters tokens.
    */
-  PLUS, MINUS, TIMES, SLASH, REM, EQUAL, NOT_EQUAL,
-  LESS, LESS_EQUAL, GREATER, GREATER_EQUAL,
-  ASSIGN, SEMICOLON, COMMA, PERIOD,
-  LEFT_PAREN, RIGHT_PAREN,
-  LEFT_BRACKET, RIGHT_BRACKET,
-  LEFT_BRACE, RIGHT_BRACE,
+  PLUS("+"), MINUS("-"), TIMES("*"), SLASH("/"), REM("%"),
+  EQUAL("=="), NOT_EQUAL("!="),
+  LESS("<"), LESS_EQUAL("<="), GREATER(">"), GREATER_EQUAL(">="),
+  ASSIGN("="), SEMICOLON(";"), COMMA(","), PERIOD("."),
+  LEFT_PAREN("("), RIGHT_PAREN(")"),
+  LEFT_BRACKET("["), RIGHT_BRACKET("]"),
+  LEFT_BRACE("{"), RIGHT_BRACE("}"),
 
   /**
    * Keyword tokens.
    */
-  CLASS, ELSE, FINAL, IF, NEW, PRINT, PROGRAM,
-  READ, RETURN, VOID, WHILE,
+  CLASS("class"), ELSE("else"), FINAL("final"), IF("if"), NEW("new"),
+  PRINT("print"), PROGRAM("program"), READ("read"), RETURN("return"),
+  VOID("void"), WHILE("while"),
 
-  EOF
+  EOF;
+
+  /**
+   * Fixed spelling of the token, or {@code null} if it has none.
+   */
+  private final String lexeme;
+
+  TokenType() {
+    this(null);
+  }
+
+  TokenType(String lexeme) {
+    this.lexeme = lexeme;
+  }
+
+  /**
+   * @return the fixed spelling of the token, or {@code null} if it has none
+   */
+  String lexeme() {
+    return lexeme;
+  }
 }
@@ -0,0 +1,72 @@
+package microjava;
+
+import java.util.Arrays;
+
+/**
+ * A growable sequence of trivia ranges, the parts of a source that are
+ * skipped by the scanner, such as comments.
+ *
+ * The ranges are kept apart from the tokens, so tools that need the
+ * comments, like formatters, can use the same scanner as the compiler.
+ */
+public class TriviaBuffer {
+	/**
+	 * Range start positions from start of source file.
+	 */
+	private int[] starts = new int[64];
+	/**
+	 * Range lengths.
+	 */
+	private int[] lengths = new int[64];
+	/**
+	 * Number of ranges in the buffer.
+	 */
+	private int size;
+
+	/**
+	 * Removes all the ranges, keeping the allocated space.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return the number of ranges in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i the range index
+	 * @return the position of the range from start of source file
+	 */
+	public int start(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @param i the range index
+	 * @return the number of characters of the range
+	 */
+	public int length(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * Appends a range.
+	 *
+	 * @param start the position of the range
+	 * @param length the number of characters of the range
+	 */
+	void add(int start, int length) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+		}
+
+		starts[size] = start;
+		lengths[size] = length;
+		size++;
+	}
+}
@@ -0,0 +1,353 @@
+package microjava;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Scanner that reads the UTF-8 bytes of a source directly, instead of
+ * decoding the whole source into characters first. Both produce the same
+ * tokens, with positions and lengths counted in characters.
+ *
+ * All the tokens of MicroJava are ASCII, so each byte below 0x80 is taken
+ * as a character. Other bytes can only be part of comments, character
+ * constants or invalid characters: each run of them is decoded when it is
+ * reached, and its characters are read one by one. Only the reading of
+ * the characters differs from {@link Scanner}, whose rules find the tokens.
+ *
+ * Whitespace and comments are skipped eight bytes at a time, by reading
+ * them as a {@code long} and testing all its bytes with a few arithmetic
+ * operations (SWAR, SIMD within a register). The bytes of the word that
+ * ends the run are then tested one by one.
+ */
+public class Utf8Scanner extends Scanner {
+	/**
+	 * End of line character.
+	 */
+	private static final char EOL = '\n';
+
+	/**
+	 * View of the source bytes as little endian longs.
+	 */
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * A word with 1 in each byte.
+	 */
+	private static final long ONES = 0x0101010101010101L;
+	/**
+	 * A word with the high bit of each byte set.
+	 */
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	/**
+	 * A word with an end of line in each byte.
+	 */
+	private static final long EOLS = ONES * EOL;
+
+	/**
+	 * Source file contents.
+	 */
+	private final byte[] bytes;
+	/**
+	 * Position of the next byte to read in {@code bytes}, or of the run of
+	 * non-ASCII bytes being read.
+	 */
+	private int bytePos;
+	/**
+	 * Position after the run of non-ASCII bytes being read.
+	 */
+	private int runEnd;
+	/**
+	 * Characters of the run of non-ASCII bytes being read.
+	 */
+	private char[] run = new char[16];
+	/**
+	 * Number of characters in {@code run}.
+	 */
+	private int runLength;
+	/**
+	 * Position of the next character to read in {@code run}.
+	 */
+	private int runIndex;
+	/**
+	 * Characters of the current name or number, copied from the bytes.
+	 */
+	private char[] lexeme = new char[16];
+
+	/**
+	 * Creates a Scanner that reads the bytes of a source file.
+	 *
+	 * @param path the source file
+	 * @throws IOException if the file cannot be read
+	 */
+	public Utf8Scanner(Path path) throws IOException {
+		this(Files.readAllBytes(path));
+	}
+
+	/**
+	 * Creates a Scanner over the UTF-8 bytes of a source.
+	 *
+	 * @param bytes the source bytes
+	 */
+	public Utf8Scanner(byte[] bytes) {
+		this(bytes, bytes.length);
+	}
+
+	/**
+	 * Creates a Scanner over the UTF-8 bytes of a source.
+	 *
+	 * @param bytes the source bytes
+	 * @param limit the number of bytes in {@code bytes}
+	 */
+	public Utf8Scanner(byte[] bytes, int limit) {
+		super(new LineIndex(bytes, limit), limit);
+		this.bytes = bytes;
+		nextCharacter();
+	}
+
+	/**
+	 * Advances one character in the source.
+	 * After the end of the source, the next character becomes EOF.
+	 */
+	@Override
+	void nextCharacter() {
+		if (bytePos < limit) {
+			byte b = bytes[bytePos];
+
+			if (b >= 0) {
+				ch = (char) b;
+				bytePos++;
+			} else {
+				ch = nextInRun();
+			}
+		} else {
+			ch = EOF_CH;
+		}
+
+		pos++;
+
+		if (ch == '\uffff') {
+			ch = EOF_CH;
+		}
+	}
+
+	/**
+	 * Reads the next character of the run of non-ASCII bytes at the current
+	 * position, decoding the run first if it's just reached. After its last
+	 * character, the position moves after the run.
+	 *
+	 * An ASCII byte always starts a new character, so the run is decoded
+	 * the same as if the whole source was decoded.
+	 *
+	 * @return the character read
+	 */
+	private char nextInRun() {
+		if (runIndex == runLength) {
+			runEnd = bytePos;
+			while (runEnd < limit && bytes[runEnd] < 0) {
+				runEnd++;
+			}
+
+			String chars = new String(bytes, bytePos, runEnd - bytePos, StandardCharsets.UTF_8);
+			runLength = chars.length();
+			if (runLength > run.length) {
+				run = new char[runLength];
+			}
+
+			chars.getChars(0, runLength, run, 0);
+			runIndex = 0;
+		}
+
+		char c = run[runIndex++];
+
+		if (runIndex == runLength) {
+			bytePos = runEnd;
+			runIndex = 0;
+			runLength = 0;
+		}
+
+		return c;
+	}
+
+	/**
+	 * Skips the whitespace from the lookahead character on.
+	 * Whitespace is ASCII, so the bytes are searched one by one, or eight
+	 * at a time when it goes on after the lookahead character. Most runs of
+	 * whitespace between tokens are a single space, for which reading a
+	 * word would only be slower.
+	 */
+	@Override
+	void skipWhitespace() {
+		int i = bytePos;
+
+		if (i < limit && bytes[i] >= 0 && bytes[i] <= ' ') {
+			while (i + 8 <= limit && !hasAboveSpace((long) LONGS.get(bytes, i))) {
+				i += 8;
+			}
+		}
+
+		while (i < limit && bytes[i] >= 0 && bytes[i] <= ' ') {
+			i++;
+		}
+
+		skipTo(i);
+	}
+
+	/**
+	 * Skips a comment, until the end of line or file.
+	 * At the beginning ch holds the second slash.
+	 *
+	 * ASCII bytes are skipped eight at a time, then one by one, and the
+	 * characters of the runs of other bytes are read one by one, as they
+	 * may end the file.
+	 */
+	@Override
+	void skipComment() {
+		while (true) {
+			int i = bytePos;
+
+			while (i + 8 <= limit && !hasEndOfLineOrNonAscii((long) LONGS.get(bytes, i))) {
+				i += 8;
+			}
+
+			while (i < limit && bytes[i] >= 0 && bytes[i] != EOL) {
+				i++;
+			}
+
+			skipTo(i);
+
+			while (ch > EOF_CH) {
+				nextCharacter();
+			}
+
+			if (ch == EOL || ch == EOF_CH) return;
+		}
+	}
+
+	/**
+	 * Skips the letters and digits after the lookahead character, which
+	 * is a letter. They are ASCII, so the bytes are searched in a tight
+	 * loop.
+	 */
+	@Override
+	void skipLettersAndDigits() {
+		int i = bytePos;
+
+		while (i < limit && isDigitOrLetter(bytes[i])) {
+			i++;
+		}
+
+		copyLexeme(i);
+		skipTo(i);
+	}
+
+	/**
+	 * Skips the digits after the lookahead character, which is a digit.
+	 * They are ASCII, so the bytes are searched in a tight loop.
+	 */
+	@Override
+	void skipDigits() {
+		int i = bytePos;
+
+		while (i < limit && isDigit(bytes[i])) {
+			i++;
+		}
+
+		copyLexeme(i);
+		skipTo(i);
+	}
+
+	/**
+	 * Copies the bytes of a name or number as characters, from the
+	 * lookahead character, which is ASCII.
+	 *
+	 * @param end the position after the name or number in {@code bytes}
+	 */
+	private void copyLexeme(int end) {
+		int start = bytePos - 1;
+
+		if (end - start > lexeme.length) {
+			lexeme = new char[Math.max(end - start, lexeme.length * 2)];
+		}
+
+		for (int i = start; i < end; i++) {
+			lexeme[i - start] = (char) bytes[i];
+		}
+	}
+
+	/**
+	 * Moves the lookahead character forward, after ASCII bytes that were
+	 * already checked, as if {@link #nextCharacter()} read each of them.
+	 *
+	 * @param index the position of the new lookahead byte
+	 */
+	private void skipTo(int index) {
+		pos += index - bytePos;
+		bytePos = index;
+		nextCharacter();
+	}
+
+	/**
+	 * @return the characters of the current name or number, copied when
+	 *         it was skipped, from index 0
+	 */
+	@Override
+	char[] lexeme() {
+		return lexeme;
+	}
+
+	@Override
+	int lexemeOffset() {
+		return 0;
+	}
+
+	/**
+	 * Checks if a byte of a word is above a space, or not ASCII. A byte
+	 * plus 0x5F only reaches 0x80 if it's above 0x20, and can only carry
+	 * into the next byte if its own high bit is set.
+	 *
+	 * @param word eight bytes of the source
+	 * @return {@code true} if one of the bytes is not whitespace
+	 */
+	private static boolean hasAboveSpace(long word) {
+		return ((word + ONES * (0x7F - ' ') | word) & HIGH_BITS) != 0;
+	}
+
+	/**
+	 * Checks if a byte of a word is an end of line, or not ASCII. The
+	 * bytes that are an end of line are 0 in {@code word ^ EOLS}, and only
+	 * a byte that is 0 there gets its high bit set by subtracting 1 without
+	 * having it before, unless a lower byte that is 0 borrowed from it.
+	 *
+	 * @param word eight bytes of the source
+	 * @return {@code true} if one of the bytes ends a comment or starts a
+	 *         run of non-ASCII bytes
+	 */
+	private static boolean hasEndOfLineOrNonAscii(long word) {
+		long eols = word ^ EOLS;
+		return ((eols - ONES & ~eols | word) & HIGH_BITS) != 0;
+	}
+
+	/**
+	 * Checks if the byte is a digit.
+	 *
+	 * @param b the byte to be checked
+	 * @return {@code true} if the byte is a digit
+	 */
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * Checks if the byte is an ASCII letter or digit.
+	 *
+	 * @param b the byte to be checked
+	 * @return {@code true} if the byte is alphanumeric
+	 */
+	private static boolean isDigitOrLetter(byte b) {
+		return isDigit(b) || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+	}
+}